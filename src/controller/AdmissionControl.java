@@ -0,0 +1,176 @@
+package src.controller;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.JukeboxAccount;
+import model.ReadableSongQueue;
+
+/**
+ * Decides whether a SongController takes on a request for a song at all,
+ * before the daily limits of the user and the song are checked. A request is
+ * turned away if the queue is already too long, in songs or in seconds of
+ * waiting, if the user has asked too often lately, or if every user together
+ * has. A refused request takes no token from any bucket, so it does not count
+ * against the rates, and a user's token is given back if every user together
+ * has asked too often.
+ * 
+ * Each rate is kept by a token bucket, held as the time at which the bucket
+ * will be full again, and taking a token is a single compare and set. Refusing
+ * a request allocates nothing. The limits may be changed at any time, and take
+ * effect from the next request. Each rate is replaced as a whole, so a request
+ * never sees half of an old rate and half of a new one.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class AdmissionControl
+{
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	
+	// the most songs the queue may hold before requests are turned away
+	private volatile int maxQueuedSongs = 500;
+	
+	// the longest, in seconds, a song queued now may have to wait
+	private volatile long maxWaitSeconds = 6 * 60 * 60;
+	
+	// how fast each user's bucket fills
+	private volatile Rate userRate = new Rate(NANOS_PER_SECOND * 10, 5);
+	
+	// how fast the bucket shared by every user fills
+	private volatile Rate globalRate = new Rate(NANOS_PER_SECOND / 50, 100);
+	
+	// when each user's bucket will be full again
+	private final ConcurrentHashMap<JukeboxAccount, AtomicLong> userBuckets = new ConcurrentHashMap<JukeboxAccount, AtomicLong>();
+	
+	// when the bucket for every user will be full again
+	private final AtomicLong globalBucket = new AtomicLong(System.nanoTime());
+	
+	/**
+	 * Returns null if a request by the user to add the given number of songs to
+	 * the queue may go ahead, and otherwise why it may not. A request for
+	 * several songs at once takes a single token from each bucket.
+	 */
+	public PlayResult admit(JukeboxAccount user, ReadableSongQueue queue, int songs)
+	{
+		if (queue.getSongCount() + songs > maxQueuedSongs || queue.getQueuedSeconds() >= maxWaitSeconds)
+		{
+			return PlayResult.QUEUE_FULL;
+		}
+		long now = System.nanoTime();
+		Rate perUser = userRate;
+		Rate shared = globalRate;
+		AtomicLong userBucket = null;
+		if (perUser.interval > 0)
+		{
+			userBucket = userBuckets.get(user);
+			if (userBucket == null)
+			{
+				// a user's first request starts with a full bucket
+				AtomicLong added = new AtomicLong(now);
+				userBucket = userBuckets.putIfAbsent(user, added);
+				userBucket = (userBucket == null) ? added : userBucket;
+			}
+			if (!take(userBucket, now, perUser))
+			{
+				return PlayResult.RATE_LIMITED;
+			}
+		}
+		if (shared.interval > 0 && !take(globalBucket, now, shared))
+		{
+			if (userBucket != null)
+			{
+				// the user's token was not used
+				userBucket.addAndGet(-perUser.interval);
+			}
+			return PlayResult.RATE_LIMITED;
+		}
+		return null;
+	}
+	
+	/**
+	 * Takes a token from the bucket, if it holds one.
+	 * 
+	 * @param bucket The time at which the bucket will be full again.
+	 * @param rate How fast the bucket fills.
+	 * @return true if a token was taken.
+	 */
+	private static boolean take(AtomicLong bucket, long now, Rate rate)
+	{
+		long full;
+		long next;
+		do
+		{
+			full = bucket.get();
+			// a bucket that filled up long ago is only full
+			next = ((full - now > 0) ? full : now) + rate.interval;
+			if (next - now > rate.capacity)
+			{
+				return false;
+			}
+		}
+		while (!bucket.compareAndSet(full, next));
+		return true;
+	}
+	
+	/**
+	 * Sets how often each user may ask for songs.
+	 * 
+	 * @param perMinute The requests a minute allowed over time, or 0 for no limit.
+	 * @param burst The most requests allowed at once.
+	 */
+	public void setUserRate(double perMinute, int burst)
+	{
+		long interval = (perMinute > 0) ? (long) (60 * NANOS_PER_SECOND / perMinute) : 0;
+		userRate = new Rate(interval, burst);
+	}
+	
+	/**
+	 * Sets how often every user together may ask for songs.
+	 * 
+	 * @param perSecond The requests a second allowed over time, or 0 for no limit.
+	 * @param burst The most requests allowed at once.
+	 */
+	public void setGlobalRate(double perSecond, int burst)
+	{
+		long interval = (perSecond > 0) ? (long) (NANOS_PER_SECOND / perSecond) : 0;
+		globalRate = new Rate(interval, burst);
+	}
+	
+	/**
+	 * Sets the most songs the queue may hold before requests are turned away.
+	 */
+	public void setMaxQueuedSongs(int songs)
+	{
+		maxQueuedSongs = songs;
+	}
+	
+	/**
+	 * Sets the longest, in seconds, that a song queued now may have to wait
+	 * before requests are turned away.
+	 */
+	public void setMaxWaitSeconds(long seconds)
+	{
+		maxWaitSeconds = seconds;
+	}
+	
+	/**
+	 * How fast a token bucket fills, never changed once made.
+	 */
+	private static final class Rate
+	{
+		// the nanoseconds the bucket takes to gain a token, with no limit when 0
+		private final long interval;
+		
+		// the nanoseconds the bucket takes to fill up when empty
+		private final long capacity;
+		
+		/**
+		 * Creates a rate of one token each interval, holding at most burst tokens.
+		 */
+		private Rate(long interval, int burst)
+		{
+			this.interval = interval;
+			this.capacity = interval * burst;
+		}
+	}
+}
@@ -1,6 +1,10 @@
 package src.controller;
 
+import java.awt.EventQueue;
+import java.io.IOException;
+
 import model.Jukebox;
+import model.SongLibraryWatcher;
 
 /**
  * A singleton coordinator object for appropriate portions of the controller code.
@@ -20,6 +24,9 @@ public class ControlCoord
 	// controls song plays
 	private final SongController songController;
 	
+	// adds songs to the library as they arrive in songfiles
+	private SongLibraryWatcher watcher;
+	
 	/**
 	 * Makes a single ControlCoord
 	 */
@@ -45,6 +52,29 @@ public class ControlCoord
 		return model;
 	}
 	
+	/**
+	 * Starts keeping the song library up to date with the songfiles directory,
+	 * changing it on the event dispatch thread. Does nothing if it has started
+	 * already.
+	 */
+	public synchronized void watchSongFiles()
+	{
+		if (watcher != null)
+		{
+			return;
+		}
+		watcher = new SongLibraryWatcher(model.getSongLibrary(), EventQueue::invokeLater);
+		try
+		{
+			watcher.start();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Watching songfiles failed");
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * Returns the SongController
 	 */
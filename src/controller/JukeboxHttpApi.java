@@ -0,0 +1,551 @@
+package src.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import model.CardReader;
+import model.Jukebox;
+import model.JukeboxAccount;
+import model.ReadableSongQueue;
+import model.Song;
+import model.SongLibrary;
+
+/**
+ * Serves a Jukebox over HTTP so that phones and kiosks can queue songs. Every
+ * response is a JSON object. Parameters may be given in the query string or,
+ * for POST requests, as a form encoded body.
+ * 
+ * POST /login with user and pass signs a user in and returns a token to give
+ * with later requests. POST /logout with token signs it out. A token not used
+ * for SESSION_IDLE_MILLIS expires, and each user may hold at most
+ * MAX_SESSIONS tokens, signing in again dropping the one used least lately.
+ * GET /songs with q and limit lists the songs best matching q, as found by
+ * SongLibrary.search(), or the first songs of the library if q is empty.
+ * GET /queue lists the songs in the queue.
+ * POST /queue with token and song asks to play the named song, subject to the
+ * same limits as the Add to playlist button. A request turned away by the
+ * controller's AdmissionControl is answered 429 if it came too fast or 503 if
+ * the queue is too long, with a Retry-After header.
+ * 
+ * Both /queue requests may name a venue, in which case they use that venue's
+ * queue and limits instead of the Jukebox's. Only venues already open in the
+ * VenueHost may be named, others are answered 404.
+ * 
+ * A request body longer than MAX_BODY_BYTES is answered 413 without being
+ * read.
+ * 
+ * Requests are handled by a fixed pool of threads. Each request holds its
+ * thread only briefly, at most waiting for the journal to reach the disk, so
+ * a small pool keeps up with many concurrent clients.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class JukeboxHttpApi
+{
+	// threads handling requests
+	private static final int THREADS = 64;
+	
+	// connections waiting to be accepted before more are refused
+	private static final int BACKLOG = 1024;
+	
+	// most songs a search returns, unless asked for fewer
+	private static final int MAX_RESULTS = 50;
+	
+	// seconds a client turned away by admission control is asked to wait
+	private static final String RETRY_AFTER_SECONDS = "10";
+	
+	// the longest request body read, in bytes
+	private static final int MAX_BODY_BYTES = 8192;
+	
+	// how long a token may go unused before it expires
+	private static final long SESSION_IDLE_MILLIS = 60 * 60 * 1000;
+	
+	// the most tokens a user may hold at once
+	private static final int MAX_SESSIONS = 5;
+	
+	// the error for a song played that could not be written to the journal
+	private static final String NOT_SAVED = "Error: The song was played, but could not be saved.";
+	
+	// the error for a venue that is not open
+	private static final String NO_VENUE = "Error: No such venue.";
+	
+	// the model served
+	private final Jukebox model;
+	
+	// plays the songs requested
+	private final SongController songController;
+	
+	// hosts the venues that may be named
+	private final VenueHost venues;
+	
+	// checks logins
+	private final CardReader reader = new CardReader();
+	
+	// signed in users by token
+	private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+	
+	// makes tokens
+	private final SecureRandom random = new SecureRandom();
+	
+	private HttpServer server;
+	private ExecutorService executor;
+	
+	/**
+	 * Creates an API for the given model, playing songs with the given controller
+	 * unless a venue hosted by venues is named.
+	 */
+	public JukeboxHttpApi(Jukebox model, SongController songController, VenueHost venues)
+	{
+		this.model = model;
+		this.songController = songController;
+		this.venues = venues;
+	}
+	
+	/**
+	 * Starts serving on the given port, or any free port if it is 0.
+	 */
+	public synchronized void start(int port) throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		server.createContext("/login", this::login);
+		server.createContext("/logout", this::logout);
+		server.createContext("/songs", this::songs);
+		server.createContext("/queue", this::queue);
+		
+		AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(THREADS, r ->
+		{
+			Thread thread = new Thread(r, "Jukebox HTTP " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+	
+	/**
+	 * Stops serving, letting requests already being handled finish.
+	 */
+	public synchronized void stop()
+	{
+		if (server != null)
+		{
+			server.stop(1);
+			executor.shutdown();
+			server = null;
+		}
+	}
+	
+	/**
+	 * Returns the port being served.
+	 */
+	public synchronized int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+	
+	// POST /login: user, pass
+	private void login(HttpExchange exchange) throws IOException
+	{
+		Map<String, String> params = readParams(exchange, "POST");
+		if (params == null)
+		{
+			return;
+		}
+		String user = params.get("user");
+		String pass = params.get("pass");
+		JukeboxAccount account = null;
+		if (user != null && pass != null)
+		{
+			account = reader.authenticate(user, pass.toCharArray());
+		}
+		if (account == null)
+		{
+			respond(exchange, 401, error("Invalid username or password."));
+			return;
+		}
+		
+		byte[] bytes = new byte[24];
+		random.nextBytes(bytes);
+		String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+		addSession(token, account);
+		respond(exchange, 200, "{\"token\":" + quote(token) + ",\"user\":" + account(account) + "}");
+	}
+	
+	// POST /logout: token
+	private void logout(HttpExchange exchange) throws IOException
+	{
+		Map<String, String> params = readParams(exchange, "POST");
+		if (params == null)
+		{
+			return;
+		}
+		String token = params.get("token");
+		boolean signedOut = token != null && sessions.remove(token) != null;
+		respond(exchange, 200, "{\"signedOut\":" + signedOut + "}");
+	}
+	
+	// GET /songs: q, limit
+	private void songs(HttpExchange exchange) throws IOException
+	{
+		Map<String, String> params = readParams(exchange, "GET");
+		if (params == null)
+		{
+			return;
+		}
+		String query = params.getOrDefault("q", "");
+		int limit = MAX_RESULTS;
+		try
+		{
+			limit = Math.max(0, Math.min(MAX_RESULTS, Integer.parseInt(params.getOrDefault("limit", "" + MAX_RESULTS))));
+		}
+		catch (NumberFormatException e)
+		{
+			respond(exchange, 400, error("limit must be a number."));
+			return;
+		}
+		
+		SongLibrary library = model.getSongLibrary();
+		List<Song> found;
+		if (query.isBlank())
+		{
+			found = new ArrayList<Song>();
+			for (int row = 0; row < library.getRowCount() && found.size() < limit; row++)
+			{
+				found.add(library.getSongAt(row));
+			}
+		}
+		else
+		{
+			found = library.search(query, limit);
+		}
+		StringBuilder json = new StringBuilder("{\"songs\":[");
+		for (int i = 0; i < found.size(); i++)
+		{
+			if (i > 0)
+			{
+				json.append(',');
+			}
+			json.append(song(found.get(i)));
+		}
+		json.append("]}");
+		respond(exchange, 200, json.toString());
+	}
+	
+	// GET /queue, or POST /queue: token, song
+	private void queue(HttpExchange exchange) throws IOException
+	{
+		if (exchange.getRequestMethod().equals("POST"))
+		{
+			enqueue(exchange);
+			return;
+		}
+		Map<String, String> params = readParams(exchange, "GET");
+		if (params == null)
+		{
+			return;
+		}
+		
+		ReadableSongQueue queue = model.getSongQueue();
+		if (params.containsKey("venue"))
+		{
+			Venue venue = getVenue(exchange, params);
+			if (venue == null)
+			{
+				return;
+			}
+			queue = venue.getSongQueue();
+		}
+		Song[] songs = queue.getSongs();
+		StringBuilder json = new StringBuilder("{\"size\":" + songs.length + ",\"songs\":[");
+		for (int i = 0; i < songs.length; i++)
+		{
+			if (i > 0)
+			{
+				json.append(',');
+			}
+			json.append(song(songs[i]));
+		}
+		json.append("]}");
+		respond(exchange, 200, json.toString());
+	}
+	
+	// POST /queue: token, song
+	private void enqueue(HttpExchange exchange) throws IOException
+	{
+		Map<String, String> params = readParams(exchange, "POST");
+		if (params == null)
+		{
+			return;
+		}
+		JukeboxAccount user = getUser(params);
+		if (user == null)
+		{
+			respond(exchange, 401, error(PlayResult.NO_USER.getMessage()));
+			return;
+		}
+		String name = params.get("song");
+		Song song = (name == null) ? null : model.getSongLibrary().getSong(name);
+		if (song == null)
+		{
+			respond(exchange, 404, error(PlayResult.NO_SONG.getMessage()));
+			return;
+		}
+		
+		SongController controller = songController;
+		if (params.containsKey("venue"))
+		{
+			Venue venue = getVenue(exchange, params);
+			if (venue == null)
+			{
+				return;
+			}
+			controller = venue.getSongController();
+		}
+		PlayResult result = controller.requestSong(user, song);
+		if (result == PlayResult.RATE_LIMITED || result == PlayResult.QUEUE_FULL)
+		{
+			// the request may succeed if it is made again later
+			exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+			respond(exchange, (result == PlayResult.RATE_LIMITED) ? 429 : 503, error(result.getMessage()));
+			return;
+		}
+		if (result != PlayResult.PLAYED)
+		{
+			respond(exchange, 403, error(result.getMessage()));
+			return;
+		}
+		if (!model.commit())
+		{
+			respond(exchange, 500, error(NOT_SAVED));
+			return;
+		}
+		respond(exchange, 200, "{\"song\":" + song(song) + ",\"user\":" + account(user) + "}");
+	}
+	
+	/**
+	 * Returns the open venue named in params, responding 404 if there is none.
+	 * 
+	 * @return The venue, or null if an error was sent.
+	 */
+	private Venue getVenue(HttpExchange exchange, Map<String, String> params) throws IOException
+	{
+		Venue venue = venues.getVenue(params.get("venue"));
+		if (venue == null)
+		{
+			respond(exchange, 404, error(NO_VENUE));
+		}
+		return venue;
+	}
+	
+	/**
+	 * Returns the user signed in with the token in params, or null if there is
+	 * none or it has expired.
+	 */
+	private JukeboxAccount getUser(Map<String, String> params)
+	{
+		String token = params.get("token");
+		Session session = (token == null) ? null : sessions.get(token);
+		if (session == null)
+		{
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if (session.isExpired(now))
+		{
+			sessions.remove(token, session);
+			return null;
+		}
+		session.lastUsed = now;
+		return session.account;
+	}
+	
+	/**
+	 * Signs the account in with the token. Drops every expired token, and the
+	 * account's tokens used least lately if it already holds MAX_SESSIONS, so
+	 * the tokens held stay bounded however often users sign in.
+	 */
+	private synchronized void addSession(String token, JukeboxAccount account)
+	{
+		long now = System.currentTimeMillis();
+		ArrayList<Map.Entry<String, Session>> held = new ArrayList<Map.Entry<String, Session>>();
+		for (Map.Entry<String, Session> entry : sessions.entrySet())
+		{
+			if (entry.getValue().isExpired(now))
+			{
+				sessions.remove(entry.getKey(), entry.getValue());
+			}
+			else if (entry.getValue().account == account)
+			{
+				held.add(entry);
+			}
+		}
+		held.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+		for (int i = 0; i <= held.size() - MAX_SESSIONS; i++)
+		{
+			sessions.remove(held.get(i).getKey(), held.get(i).getValue());
+		}
+		sessions.put(token, new Session(account, now));
+	}
+	
+	/**
+	 * Reads the query string and any form encoded body of the request, responding
+	 * with an error if the request does not use the given method or its body is
+	 * longer than MAX_BODY_BYTES.
+	 * 
+	 * @return The parameters, or null if an error was sent.
+	 */
+	private static Map<String, String> readParams(HttpExchange exchange, String method) throws IOException
+	{
+		HashMap<String, String> params = new HashMap<String, String>();
+		if (!exchange.getRequestMethod().equals(method))
+		{
+			exchange.getResponseHeaders().set("Allow", method);
+			respond(exchange, 405, error("Use " + method + "."));
+			return null;
+		}
+		parseParams(exchange.getRequestURI().getRawQuery(), params);
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		try (InputStream in = exchange.getRequestBody())
+		{
+			// a body without a length is counted as it is read
+			byte[] body = (length != null && isTooLong(length)) ? null : in.readNBytes(MAX_BODY_BYTES + 1);
+			if (body == null || body.length > MAX_BODY_BYTES)
+			{
+				respond(exchange, 413, error("The request is too large."));
+				return null;
+			}
+			parseParams(new String(body, StandardCharsets.UTF_8), params);
+		}
+		return params;
+	}
+	
+	// Returns true if the Content-Length given is more than MAX_BODY_BYTES
+	private static boolean isTooLong(String length)
+	{
+		try
+		{
+			return Long.parseLong(length.trim()) > MAX_BODY_BYTES;
+		}
+		catch (NumberFormatException e)
+		{
+			return true;
+		}
+	}
+	
+	/**
+	 * Adds each name=value pair of a form encoded string to params.
+	 */
+	private static void parseParams(String encoded, Map<String, String> params)
+	{
+		if (encoded == null || encoded.isEmpty())
+		{
+			return;
+		}
+		for (String pair : encoded.split("&"))
+		{
+			int eq = pair.indexOf('=');
+			String name = (eq < 0) ? pair : pair.substring(0, eq);
+			String value = (eq < 0) ? "" : pair.substring(eq + 1);
+			params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+	}
+	
+	/**
+	 * Sends a JSON response and closes the exchange.
+	 */
+	private static void respond(HttpExchange exchange, int status, String json) throws IOException
+	{
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(body);
+		}
+	}
+	
+	// Returns a JSON object holding the error message
+	private static String error(String message)
+	{
+		return "{\"error\":" + quote(message) + "}";
+	}
+	
+	// Returns a JSON object describing the song
+	private static String song(Song song)
+	{
+		return "{\"name\":" + quote(song.getName()) + ",\"artist\":" + quote(song.getArtist()) + ",\"length\":"
+				+ song.getLength() + ",\"timesPlayed\":" + song.getTimesPlayed() + "}";
+	}
+	
+	// Returns a JSON object describing the account, without its password
+	private static String account(JukeboxAccount account)
+	{
+		return "{\"user\":" + quote(account.getUser()) + ",\"time\":" + account.getTime() + ",\"timesPlayed\":"
+				+ account.getTimesPlayed() + "}";
+	}
+	
+	/**
+	 * Returns the string as a JSON string literal.
+	 */
+	static String quote(String s)
+	{
+		StringBuilder ret = new StringBuilder(s.length() + 2).append('"');
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				ret.append('\\').append(c);
+			}
+			else if (c < 0x20)
+			{
+				ret.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				ret.append(c);
+			}
+		}
+		return ret.append('"').toString();
+	}
+	
+	/**
+	 * A signed in user and when its token was last used.
+	 */
+	private static class Session
+	{
+		private final JukeboxAccount account;
+		private volatile long lastUsed;
+		
+		private Session(JukeboxAccount account, long lastUsed)
+		{
+			this.account = account;
+			this.lastUsed = lastUsed;
+		}
+		
+		// Returns true if the token has gone unused too long at the given time
+		private boolean isExpired(long now)
+		{
+			return now - lastUsed > SESSION_IDLE_MILLIS;
+		}
+	}
+}
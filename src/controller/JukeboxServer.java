@@ -0,0 +1,164 @@
+package src.controller;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import model.Jukebox;
+import model.SongLibraryWatcher;
+import model.SongScanner;
+import songplayer.PlaybackEngine;
+
+/**
+ * Runs a Jukebox with no window, for machines without a display. The model,
+ * the SongController and saving work as they do in JukeboxStartGUI, but no
+ * Swing or AWT class is ever loaded: end of song events are handled on a
+ * thread of the server's own rather than the event dispatch thread.
+ * 
+ * The saved model is loaded and its queue resumed on start, and the model is
+ * saved when the server is stopped or the JVM shuts down. Songs are requested
+ * through a JukeboxHttpApi, on the port given as the first argument or 8080,
+ * for the server's own queue or for any of the venues it hosts. Each venue is
+ * opened by an argument --venue=<name>, and no others are served. Given --scan
+ * as well, the library is replaced with the songs found in songfiles on start.
+ * Either way, songs added to songfiles while the server runs are added to the
+ * library.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class JukeboxServer
+{
+	// the port served unless another is given
+	private static final int DEFAULT_PORT = 8080;
+	
+	// the argument opening a venue, followed by its name
+	private static final String VENUE_OPTION = "--venue=";
+	
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		System.setProperty("java.awt.headless", "true");
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		JukeboxServer server = new JukeboxServer();
+		for (int i = 1; i < args.length; i++)
+		{
+			if (args[i].equals("--scan"))
+			{
+				server.scanOnStart = true;
+			}
+			else if (args[i].startsWith(VENUE_OPTION))
+			{
+				server.venues.openVenue(args[i].substring(VENUE_OPTION.length()));
+			}
+		}
+		server.start(port);
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "Jukebox shutdown"));
+		server.awaitStop();
+	}
+	
+	// our model
+	private final Jukebox model = new Jukebox();
+	
+	// controls song plays
+	private final SongController songController = new SongController(model.getSongQueue());
+	
+	// hosts other venues, one worker for each processor
+	private final VenueHost venues = new VenueHost(Runtime.getRuntime().availableProcessors());
+	
+	// serves requests for songs
+	private final JukeboxHttpApi api = new JukeboxHttpApi(model, songController, venues);
+	
+	// handles end of song events, one at a time
+	private final ExecutorService events = Executors.newSingleThreadExecutor(r ->
+	{
+		Thread thread = new Thread(r, "Jukebox events");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	// counted down once the server has stopped
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	
+	// true if the library should be replaced with the songs in songfiles on start
+	private boolean scanOnStart;
+	
+	// adds songs to the library as they arrive in songfiles, on the events thread
+	private final SongLibraryWatcher watcher = new SongLibraryWatcher(model.getSongLibrary(), events);
+	
+	/**
+	 * Loads the saved model, starts playing its queue and starts serving
+	 * requests on the given port, or any free port if it is 0.
+	 */
+	public void start(int port) throws IOException
+	{
+		PlaybackEngine.getInstance().setListenerExecutor(events);
+		model.load();
+		if (scanOnStart)
+		{
+			SongScanner scanner = new SongScanner();
+			model.getSongLibrary().scanSongs(scanner);
+			scanner.shutdown();
+		}
+		songController.addSong(null);
+		watcher.start();
+		api.start(port);
+	}
+	
+	/**
+	 * Saves the model and stops handling events. Does nothing if the server has
+	 * stopped already.
+	 */
+	public synchronized void stop()
+	{
+		if (stopped.getCount() == 0)
+		{
+			return;
+		}
+		api.stop();
+		watcher.stop();
+		venues.shutdown();
+		model.save();
+		events.shutdown();
+		stopped.countDown();
+	}
+	
+	/**
+	 * Waits until the server has stopped.
+	 */
+	public void awaitStop() throws InterruptedException
+	{
+		stopped.await();
+	}
+	
+	/**
+	 * Returns the model
+	 */
+	public Jukebox getModel()
+	{
+		return model;
+	}
+	
+	/**
+	 * Returns the host of the other venues
+	 */
+	public VenueHost getVenues()
+	{
+		return venues;
+	}
+	
+	/**
+	 * Returns the HTTP API
+	 */
+	public JukeboxHttpApi getApi()
+	{
+		return api;
+	}
+	
+	/**
+	 * Returns the SongController
+	 */
+	public SongController getSongController()
+	{
+		return songController;
+	}
+}
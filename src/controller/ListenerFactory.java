@@ -1,14 +1,16 @@
 package src.controller;
 
+import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.JOptionPane;
 
-import model.DateUpdater;
 import model.Jukebox;
 import model.JukeboxAccount;
 import model.ReadableSongQueue;
@@ -25,6 +27,14 @@ public class ListenerFactory
 	// the window whose view we are making listeners for.
 	private final JukeboxStartGUI window;
 	
+	// commits played songs to the journal, off the event dispatch thread
+	private final ExecutorService committer = Executors.newSingleThreadExecutor(r ->
+	{
+		Thread thread = new Thread(r, "Jukebox commits");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
 	/**
 	 * Constructs a factory for the given window's view.
 	 * 
@@ -113,61 +123,47 @@ public class ListenerFactory
 		}
 		
 		/*
-		 * Sends an update message to DateUpdater and attempts to play the song,
-		 * giving error messages as appropriate.
+		 * Attempts to play the song, giving error messages as appropriate. A
+		 * played song is committed on the committer, which may wait on the disk
+		 * or save the whole model, and the user's status is shown once it is.
 		 */
 		@Override
 		public void actionPerformed(ActionEvent e)
 		{
-			DateUpdater.getInstance().updateEvent();
 			ControlCoord coord = ControlCoord.getInstance();
 			JukeboxAccount user = coord.getModel().getCurrentUser();
 			Song song = songGetter.getSong();
 			
-			// error if we are not logged in
-			if (user == null)
-			{
-				String msg = "Error: No user is signed in.";
-				JOptionPane.showMessageDialog(window, msg);
-				return;
-			}
-			
-			// error if we can't find the song
-			if (song == null)
+			PlayResult result = coord.getSongController().requestSong(user, song);
+			if (result == PlayResult.PLAYED)
 			{
-				String msg = "Error: No song selected.";
-				JOptionPane.showMessageDialog(window, msg);
+				committer.execute(() -> commit(coord.getModel(), user));
 				return;
 			}
-			
-			int length = song.getLength();
-			
-			// checks if the user can play this song and if the song can be played more
-			if (user.getCanPlay(song) && song.canPlay())
-			{
-				user.playSong(length);
-				song.playSong();
-				coord.getSongController().addSong(song);
-			}
-			// error because user cannot play anymore songs
-			else if (!user.getCanPlay())
+			JOptionPane.showMessageDialog(window, result.getMessage());
+			if (user != null)
 			{
-				String msg = "Error: User is out of songs for today.";
-				JOptionPane.showMessageDialog(window, msg);
+				window.getLoginView().updateStatus(user);
 			}
-			// error because the song can't be played
-			else if (!song.canPlay())
+		}
+		
+		/**
+		 * Commits the model, then shows the user's status, or an error if the
+		 * play could not be committed, on the event dispatch thread.
+		 */
+		private void commit(Jukebox model, JukeboxAccount user)
+		{
+			if (!model.commit())
 			{
-				String msg = "Error: Song has reached its daily limit.";
-				JOptionPane.showMessageDialog(window, msg);
+				EventQueue.invokeLater(() -> JOptionPane.showMessageDialog(window, "The song played could not be saved."));
 			}
-			// error because the user doesn't have enough time
-			else
+			EventQueue.invokeLater(() ->
 			{
-				String msg = "Error: User has insufficient time remaining.";
-				JOptionPane.showMessageDialog(window, msg);
-			}
-			window.getLoginView().updateStatus(user);
+				if (user != null)
+				{
+					window.getLoginView().updateStatus(user);
+				}
+			});
 		}
 	}
 	
@@ -208,10 +204,16 @@ public class ListenerFactory
 				coord.getModel().load();
 				coord.getSongController().addSong(null);
 			}
+			if (result == JOptionPane.NO_OPTION)
+			{
+				// start the journal from the new model so a crash can be recovered
+				ControlCoord.getInstance().getModel().save();
+			}
 			if (result == JOptionPane.CANCEL_OPTION)
 			{
 				System.exit(0);
 			}
+			ControlCoord.getInstance().watchSongFiles();
 		}
 		
 		/**
@@ -0,0 +1,34 @@
+package src.controller;
+
+/**
+ * The outcome of asking a SongController to play a song for a user.
+ * 
+ * @author Taylor Heimbichner
+ */
+public enum PlayResult
+{
+	PLAYED("Song added to the playlist."),
+	NO_USER("Error: No user is signed in."),
+	NO_SONG("Error: No song selected."),
+	USER_OUT_OF_PLAYS("Error: User is out of songs for today."),
+	SONG_OUT_OF_PLAYS("Error: Song has reached its daily limit."),
+	INSUFFICIENT_TIME("Error: User has insufficient time remaining."),
+	RATE_LIMITED("Error: Too many requests, try again shortly."),
+	QUEUE_FULL("Error: The playlist is full, try again later.");
+	
+	// a message for the user
+	private final String message;
+	
+	private PlayResult(String message)
+	{
+		this.message = message;
+	}
+	
+	/**
+	 * Returns a message describing the result, suitable to show the user.
+	 */
+	public String getMessage()
+	{
+		return message;
+	}
+}
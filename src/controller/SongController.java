@@ -1,14 +1,32 @@
 package src.controller;
 
+import java.util.Collections;
+import java.util.List;
+
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import model.DateUpdater;
+import model.Journal;
+import model.JukeboxAccount;
 import model.ReadableSongQueue;
 import model.Song;
+import model.SongPlayCounts;
 import songplayer.EndOfSongListener;
-import songplayer.SongPlayer;
+import songplayer.PlaybackEngine;
 
 /**
  * Plays songs from a given Queue with the appropriate timing so that Songs will
  * never overlap.
  * 
+ * Songs may be added from any thread. Handing songs to the player is done with
+ * the controller locked, so they are always handed over in queue order, but
+ * requests for songs only lock the controller to do that.
+ * 
+ * By default songs are played by the PlaybackEngine and counted by the songs
+ * themselves. A venue hosted on a server instead gives each controller its own
+ * Player and SongPlayCounts.
+ * 
  * @author Taylor Heimbichner
  */
 public class SongController
@@ -19,15 +37,64 @@ public class SongController
 	// The queue that holds the songs we should play
 	private final ReadableSongQueue songQueue;
 	
-	// true when a song is currently playing
-	private boolean isPlaying = false;
+	// Plays the songs
+	private final Player player;
+	
+	// Enforces the daily limit on plays of each song
+	private final SongPlayCounts songPlays;
+	
+	// Turns requests away when they come too fast or the queue is too long
+	private final AdmissionControl admission = new AdmissionControl();
+	
+	// How long requests for songs take, of every controller, and how many end
+	// with each PlayResult, by ordinal
+	private static final LatencyHistogram REQUEST_TIMES = Metrics.getInstance().histogram("song.requests");
+	private static final Counter[] RESULTS = new Counter[PlayResult.values().length];
+	static
+	{
+		for (PlayResult result : PlayResult.values())
+		{
+			RESULTS[result.ordinal()] = Metrics.getInstance().counter("song.results." + result.name().toLowerCase());
+		}
+	}
+	
+	// How many songs the player is given at once: the playing song and the next
+	private static final int LOOK_AHEAD = 2;
+	
+	// The number of songs at the head of the queue already given to the player,
+	// only changed with the controller locked
+	private int submitted = 0;
 	
 	/**
-	 * Constructs a SongController to play songs in the given Queue.
+	 * Constructs a SongController to play songs in the given Queue with the
+	 * PlaybackEngine.
 	 */
 	public SongController(ReadableSongQueue songQueue)
+	{
+		this(songQueue, (song, listener) -> PlaybackEngine.getInstance().play(song.getFileName(), listener),
+				SongPlayCounts.SHARED);
+	}
+	
+	/**
+	 * Constructs a SongController to play songs in the given Queue with the
+	 * given player, limiting plays of each song with the given counts.
+	 */
+	public SongController(ReadableSongQueue songQueue, Player player, SongPlayCounts songPlays)
 	{
 		this.songQueue = songQueue;
+		this.player = player;
+		this.songPlays = songPlays;
+	}
+	
+	/**
+	 * Sets the silence the PlaybackEngine leaves between consecutive songs. Songs
+	 * play back to back when this is 0, which is the default.
+	 * 
+	 * @param millis The delay in milliseconds.
+	 */
+	public void setInterSongDelay(long millis)
+	{
+		PlaybackEngine.getInstance().setInterSongDelay(millis);
 	}
 	
 	/**
@@ -36,45 +103,224 @@ public class SongController
 	 * 
 	 * @param song The Song to play.
 	 */
-	public void addSong(Song song)
+	public synchronized void addSong(Song song)
 	{
 		songQueue.addToQueue(song);
-		tryPlaySong();
+		submitSongs();
 	}
 	
 	/**
-	 * Runs whenever a song is finished. Will play the next song, if there is one.
+	 * Returns the admission control that requests for songs pass first, whose
+	 * limits may be changed at any time.
+	 */
+	public AdmissionControl getAdmissionControl()
+	{
+		return admission;
+	}
+	
+	/**
+	 * Plays a song for a user, if the AdmissionControl lets the request through,
+	 * the user and the song both have plays left today and the user has time
+	 * enough for the song. Each check is made in one step with taking what it
+	 * allows, without locking the controller, so requests from different
+	 * threads can not both be allowed the last play, and requests for different
+	 * users and songs do not wait for one another. Whatever was taken is given
+	 * back if the request is refused or the song can not be queued.
+	 * 
+	 * @param user The user asking, or null if no one is signed in.
+	 * @param song The song to play, or null if none was chosen.
+	 * @return PLAYED if the song was added to the queue, otherwise why it was not.
+	 */
+	public PlayResult requestSong(JukeboxAccount user, Song song)
+	{
+		long start = System.nanoTime();
+		PlayResult result = admit(user, song == null, 1);
+		if (result == null)
+		{
+			result = play(user, Collections.singletonList(song));
+		}
+		return recorded(result, start);
+	}
+	
+	/**
+	 * Plays several songs for a user, in order, as requestSong() plays one: all
+	 * of them, one after another in the queue, or none. The request passes the
+	 * AdmissionControl once, and the user's plays and time for every song are
+	 * taken together. Listeners of the queue are told of the songs at once.
+	 * 
+	 * @param user The user asking, or null if no one is signed in.
+	 * @param songs The songs to play, which may include a song more than once.
+	 * @return PLAYED if every song was added to the queue, otherwise why none was.
+	 */
+	public PlayResult requestSongs(JukeboxAccount user, List<Song> songs)
+	{
+		long start = System.nanoTime();
+		PlayResult result = admit(user, songs.isEmpty() || songs.contains(null), songs.size());
+		if (result == null)
+		{
+			result = play(user, songs);
+		}
+		return recorded(result, start);
+	}
+	
+	/**
+	 * Returns why a request by the user for the given number of songs is turned
+	 * away before anything is taken, or null if it may go ahead.
+	 * 
+	 * @param noSong true if no song, or a null song, was asked for.
 	 */
-	private void onSongFinished()
+	private PlayResult admit(JukeboxAccount user, boolean noSong, int songs)
 	{
+		if (user == null)
+		{
+			return PlayResult.NO_USER;
+		}
+		if (noSong)
+		{
+			return PlayResult.NO_SONG;
+		}
+		// refused before anything is allocated
+		return admission.admit(user, songQueue, songs);
+	}
+	
+	/**
+	 * Counts the result of a request and the time since it started, then
+	 * returns the result.
+	 */
+	private static PlayResult recorded(PlayResult result, long start)
+	{
+		REQUEST_TIMES.recordSince(start);
+		RESULTS[result.ordinal()].increment();
+		return result;
+	}
+	
+	/**
+	 * Takes the plays and time for the songs and queues them, or takes and
+	 * queues nothing if any song can not be played.
+	 */
+	private PlayResult play(JukeboxAccount user, List<Song> songs)
+	{
+		DateUpdater.getInstance().updateEvent();
+		// a snapshot never holds plays taken here but not yet journaled
+		Journal journal = Journal.getInstance();
+		long change = journal.beginChange();
 		try
 		{
-			Thread.sleep(1000);
+			PlayResult refused = queue(user, songs);
+			if (refused != null)
+			{
+				return refused;
+			}
 		}
-		catch (InterruptedException e)
+		finally
 		{
-			e.printStackTrace();
+			journal.endChange(change);
 		}
-		isPlaying = false;
-		// remove the song we just finished from the queue
-		songQueue.removeFromQueue();
-		tryPlaySong();
+		synchronized (this)
+		{
+			submitSongs();
+		}
+		return PlayResult.PLAYED;
 	}
 	
 	/**
-	 * Plays a song if the queue is not empty and there is not already a song playing.
+	 * Takes the plays and time for the songs, queues them and journals the
+	 * plays.
+	 * 
+	 * @return null if the songs were queued, otherwise why they were not.
 	 */
-	private void tryPlaySong()
+	private PlayResult queue(JukeboxAccount user, List<Song> songs)
 	{
-		if (isPlaying)
+		if (!user.reservePlays(songs))
+		{
+			if (!user.hasPlaysLeft(songs.size()))
+			{
+				return PlayResult.USER_OUT_OF_PLAYS;
+			}
+			for (Song song : songs)
+			{
+				if (!songPlays.canPlay(song))
+				{
+					return PlayResult.SONG_OUT_OF_PLAYS;
+				}
+			}
+			return PlayResult.INSUFFICIENT_TIME;
+		}
+		for (int i = 0; i < songs.size(); i++)
+		{
+			if (!songPlays.reservePlay(songs.get(i)))
+			{
+				for (int j = 0; j < i; j++)
+				{
+					songPlays.releasePlay(songs.get(j));
+				}
+				user.releasePlays(songs);
+				return PlayResult.SONG_OUT_OF_PLAYS;
+			}
+		}
+		
+		// the queue locks itself, only handing songs to the player needs the
+		// controller locked
+		boolean queued = false;
+		try
+		{
+			songQueue.addAllToQueue(songs);
+			queued = true;
+		}
+		finally
 		{
-			return;
+			if (!queued)
+			{
+				user.releasePlays(songs);
+				for (Song song : songs)
+				{
+					songPlays.releasePlay(song);
+				}
+			}
 		}
-		Song toPlay = songQueue.peekAtQueue();
-		if (toPlay != null)
+		user.confirmPlays(songs);
+		for (Song song : songs)
 		{
-			isPlaying = true;
-			SongPlayer.playFile(eosListener, toPlay.getFileName());
+			songPlays.confirmPlay(song);
 		}
+		return null;
+	}
+	
+	/**
+	 * Runs whenever a song is finished. Will play the next song, if there is one.
+	 */
+	private synchronized void onSongFinished()
+	{
+		submitted--;
+		// remove the song we just finished from the queue
+		songQueue.removeFromQueue();
+		submitSongs();
+	}
+	
+	/**
+	 * Gives the player the song at the head of the queue and the one after it,
+	 * if it does not have them already. The PlaybackEngine decodes the second
+	 * song while the first plays so that it can start the moment the first ends.
+	 */
+	private void submitSongs()
+	{
+		while (submitted < LOOK_AHEAD && submitted < songQueue.getSongCount())
+		{
+			Song toPlay = songQueue.getSong(submitted);
+			player.play(toPlay, eosListener);
+			submitted++;
+		}
+	}
+	
+	/**
+	 * Plays songs for a SongController, one after another in the order given.
+	 */
+	public static interface Player
+	{
+		/**
+		 * Plays the song once every song given before it has played, then
+		 * notifies the listener.
+		 */
+		public void play(Song song, EndOfSongListener listener);
 	}
-}
\ No newline at end of file
+}
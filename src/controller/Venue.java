@@ -0,0 +1,101 @@
+package src.controller;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import model.ReadableSongQueue;
+import model.Song;
+import model.VenuePlayCounts;
+import songplayer.EndOfSongEvent;
+import songplayer.EndOfSongListener;
+
+/**
+ * One of many jukeboxes hosted by a VenueHost. Each venue has its own queue,
+ * its own counts of song plays and its own SongController, and shares the
+ * SongLibrary, the accounts and the date with every other venue.
+ * 
+ * The songs are heard at the venue, not on the host, so the host only keeps
+ * time: each song is finished once its length has passed, on the worker the
+ * venue was given. A venue's queue and counts are kept in memory only.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class Venue
+{
+	// the name the venue is known by
+	private final String name;
+	
+	// Holds the songs waiting to play here
+	private final ReadableSongQueue songQueue = new ReadableSongQueue(false);
+	
+	// Counts the plays of each song here
+	private final VenuePlayCounts songPlays = new VenuePlayCounts();
+	
+	// controls song plays
+	private final SongController songController;
+	
+	// the worker that finishes this venue's songs, shared with other venues
+	private final ScheduledExecutorService worker;
+	
+	// when the last song given to play() will finish, in System.nanoTime() units
+	private long playingUntil = System.nanoTime();
+	
+	/**
+	 * Creates a venue whose songs are timed on the given worker.
+	 */
+	Venue(String name, ScheduledExecutorService worker)
+	{
+		this.name = name;
+		this.worker = worker;
+		songController = new SongController(songQueue, this::play, songPlays);
+	}
+	
+	/**
+	 * Schedules the listener to be notified when the song, played after every
+	 * song already given, has finished.
+	 */
+	private synchronized void play(Song song, EndOfSongListener listener)
+	{
+		long now = System.nanoTime();
+		playingUntil = Math.max(now, playingUntil) + TimeUnit.SECONDS.toNanos(song.getLength());
+		worker.schedule(() ->
+		{
+			EndOfSongEvent eose = new EndOfSongEvent(song.getFileName(), LocalDate.now(), LocalTime.now());
+			listener.songFinishedPlaying(eose);
+		}, playingUntil - now, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Returns the name of the venue
+	 */
+	public String getName()
+	{
+		return name;
+	}
+	
+	/**
+	 * Returns the songs waiting to play here
+	 */
+	public ReadableSongQueue getSongQueue()
+	{
+		return songQueue;
+	}
+	
+	/**
+	 * Returns the counts of song plays here
+	 */
+	public VenuePlayCounts getSongPlays()
+	{
+		return songPlays;
+	}
+	
+	/**
+	 * Returns the SongController
+	 */
+	public SongController getSongController()
+	{
+		return songController;
+	}
+}
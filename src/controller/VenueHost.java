@@ -0,0 +1,88 @@
+package src.controller;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Hosts many Venues in one JVM. Venues do not get threads of their own:
+ * each is given one of a fixed number of workers by the hash of its name, and
+ * the worker finishes the songs of every venue it was given. All of a venue's
+ * songs are finished by the same worker, so they finish in order.
+ * 
+ * Venues are opened by the host's owner, never by the clients naming them,
+ * so that the venues open, and the memory they use, stay bounded.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class VenueHost
+{
+	// the workers venues are shared between
+	private final ScheduledExecutorService[] workers;
+	
+	// venues by name
+	private final ConcurrentHashMap<String, Venue> venues = new ConcurrentHashMap<String, Venue>();
+	
+	/**
+	 * Creates a host with the given number of workers.
+	 */
+	public VenueHost(int workerCount)
+	{
+		workers = new ScheduledExecutorService[workerCount];
+		for (int i = 0; i < workerCount; i++)
+		{
+			String threadName = "Venue worker " + i;
+			workers[i] = Executors.newSingleThreadScheduledExecutor(r ->
+			{
+				Thread thread = new Thread(r, threadName);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+	
+	/**
+	 * Returns the venue with the given name, opening it if it is not open yet.
+	 */
+	public Venue openVenue(String name)
+	{
+		return venues.computeIfAbsent(name, n -> new Venue(n, workers[Math.floorMod(n.hashCode(), workers.length)]));
+	}
+	
+	/**
+	 * Returns the open venue with the given name, or null if there is none.
+	 */
+	public Venue getVenue(String name)
+	{
+		return venues.get(name);
+	}
+	
+	/**
+	 * Returns every open venue.
+	 */
+	public Collection<Venue> getVenues()
+	{
+		return Collections.unmodifiableCollection(venues.values());
+	}
+	
+	/**
+	 * Returns the number of workers venues are shared between.
+	 */
+	public int getWorkerCount()
+	{
+		return workers.length;
+	}
+	
+	/**
+	 * Stops every worker. Songs still playing are never finished.
+	 */
+	public void shutdown()
+	{
+		for (ScheduledExecutorService worker : workers)
+		{
+			worker.shutdownNow();
+		}
+	}
+}
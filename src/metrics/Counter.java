@@ -0,0 +1,37 @@
+package src.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events. The count is a LongAdder, so threads counting at once rarely
+ * write to the same memory.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class Counter implements CounterMBean
+{
+	// the events counted
+	private final LongAdder count = new LongAdder();
+	
+	/**
+	 * Counts one event.
+	 */
+	public void increment()
+	{
+		count.increment();
+	}
+	
+	/**
+	 * Counts the given number of events.
+	 */
+	public void add(long events)
+	{
+		count.add(events);
+	}
+	
+	@Override
+	public long getCount()
+	{
+		return count.sum();
+	}
+}
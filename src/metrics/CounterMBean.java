@@ -0,0 +1,14 @@
+package src.metrics;
+
+/**
+ * The attributes of a Counter shown over JMX.
+ * 
+ * @author Taylor Heimbichner
+ */
+public interface CounterMBean
+{
+	/**
+	 * Returns the number of events counted.
+	 */
+	public long getCount();
+}
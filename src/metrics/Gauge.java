@@ -0,0 +1,37 @@
+package src.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A value read when it is asked for, such as the length of a queue, rather
+ * than recorded as it changes.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class Gauge implements GaugeMBean
+{
+	// reads the value
+	private volatile LongSupplier value;
+	
+	/**
+	 * Creates a gauge that reads its value from the given supplier.
+	 */
+	public Gauge(LongSupplier value)
+	{
+		this.value = value;
+	}
+	
+	/**
+	 * Sets where the value is read from.
+	 */
+	public void setValue(LongSupplier value)
+	{
+		this.value = value;
+	}
+	
+	@Override
+	public long getValue()
+	{
+		return value.getAsLong();
+	}
+}
@@ -0,0 +1,14 @@
+package src.metrics;
+
+/**
+ * The attributes of a Gauge shown over JMX.
+ * 
+ * @author Taylor Heimbichner
+ */
+public interface GaugeMBean
+{
+	/**
+	 * Returns the value now.
+	 */
+	public long getValue();
+}
@@ -0,0 +1,184 @@
+package src.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long something took, in buckets whose width grows with the time,
+ * as an HdrHistogram does. Times below 32 ns each have a bucket of their own,
+ * and above that every doubling of the time is split into 32 buckets, so a
+ * percentile read back is at most about 3% longer than the time recorded.
+ * Times of about 19 hours or longer are all counted in the last bucket.
+ * 
+ * Each bucket is a LongAdder, so threads recording at once rarely write to the
+ * same memory, and recording allocates nothing. Reading adds up every bucket,
+ * and may or may not see times recorded while it reads.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class LatencyHistogram implements LatencyHistogramMBean
+{
+	// bits of each time counted exactly after its highest bit, and the buckets
+	// each doubling of the time is split into
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	
+	// the highest bit of the longest time with a bucket of its own, 2^46 ns
+	// being about 19 hours
+	private static final int MAX_BIT = 45;
+	
+	// the number of buckets
+	private static final int BUCKETS = (MAX_BIT - SUB_BITS + 2) * SUB_COUNT;
+	
+	// the times counted in each bucket
+	private final LongAdder[] counts = new LongAdder[BUCKETS];
+	
+	// the sum of every time recorded, in nanoseconds
+	private final LongAdder total = new LongAdder();
+	
+	/**
+	 * Creates an empty histogram.
+	 */
+	public LatencyHistogram()
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] = new LongAdder();
+		}
+	}
+	
+	/**
+	 * Records that something took the given time.
+	 * 
+	 * @param nanos The time in nanoseconds, counted as 0 if negative.
+	 */
+	public void record(long nanos)
+	{
+		if (nanos < 0)
+		{
+			nanos = 0;
+		}
+		counts[bucket(nanos)].increment();
+		total.add(nanos);
+	}
+	
+	/**
+	 * Records the time since start, a value of System.nanoTime().
+	 */
+	public void recordSince(long start)
+	{
+		record(System.nanoTime() - start);
+	}
+	
+	/**
+	 * Returns the bucket counting the given time, which is not negative.
+	 */
+	private static int bucket(long nanos)
+	{
+		if (nanos < SUB_COUNT)
+		{
+			return (int) nanos;
+		}
+		int bit = 63 - Long.numberOfLeadingZeros(nanos);
+		if (bit > MAX_BIT)
+		{
+			return BUCKETS - 1;
+		}
+		int shift = bit - SUB_BITS;
+		return ((shift + 1) << SUB_BITS) + (int) ((nanos >>> shift) & (SUB_COUNT - 1));
+	}
+	
+	/**
+	 * Returns the longest time counted in the given bucket, in nanoseconds.
+	 */
+	private static long highest(int bucket)
+	{
+		if (bucket < SUB_COUNT)
+		{
+			return bucket;
+		}
+		int shift = (bucket >>> SUB_BITS) - 1;
+		long lowest = (long) (SUB_COUNT + (bucket & (SUB_COUNT - 1))) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+	
+	/**
+	 * Returns the time, in milliseconds, that the given percent of the times
+	 * recorded took at most, or 0 if none has been recorded.
+	 * 
+	 * @param percent A percentage from 0 to 100.
+	 */
+	public double getPercentileMillis(double percent)
+	{
+		long[] counted = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counted[i] = counts[i].sum();
+			count += counted[i];
+		}
+		if (count == 0)
+		{
+			return 0;
+		}
+		// the rank of the time wanted, from 1 to count
+		long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += counted[i];
+			if (seen >= rank)
+			{
+				return highest(i) / 1e6;
+			}
+		}
+		return highest(BUCKETS - 1) / 1e6;
+	}
+	
+	@Override
+	public long getCount()
+	{
+		long count = 0;
+		for (LongAdder bucket : counts)
+		{
+			count += bucket.sum();
+		}
+		return count;
+	}
+	
+	@Override
+	public double getMeanMillis()
+	{
+		long count = getCount();
+		return (count == 0) ? 0 : total.sum() / 1e6 / count;
+	}
+	
+	@Override
+	public double getMedianMillis()
+	{
+		return getPercentileMillis(50);
+	}
+	
+	@Override
+	public double get90thPercentileMillis()
+	{
+		return getPercentileMillis(90);
+	}
+	
+	@Override
+	public double get99thPercentileMillis()
+	{
+		return getPercentileMillis(99);
+	}
+	
+	@Override
+	public double get999thPercentileMillis()
+	{
+		return getPercentileMillis(99.9);
+	}
+	
+	@Override
+	public double getMaxMillis()
+	{
+		return getPercentileMillis(100);
+	}
+}
@@ -0,0 +1,45 @@
+package src.metrics;
+
+/**
+ * The attributes of a LatencyHistogram shown over JMX. Each time is the
+ * longest in its bucket, so may be up to about 3% longer than was recorded.
+ * 
+ * @author Taylor Heimbichner
+ */
+public interface LatencyHistogramMBean
+{
+	/**
+	 * Returns the number of times recorded.
+	 */
+	public long getCount();
+	
+	/**
+	 * Returns the mean of the times recorded, in milliseconds.
+	 */
+	public double getMeanMillis();
+	
+	/**
+	 * Returns the median time recorded, in milliseconds.
+	 */
+	public double getMedianMillis();
+	
+	/**
+	 * Returns the time 90% of the times recorded took at most, in milliseconds.
+	 */
+	public double get90thPercentileMillis();
+	
+	/**
+	 * Returns the time 99% of the times recorded took at most, in milliseconds.
+	 */
+	public double get99thPercentileMillis();
+	
+	/**
+	 * Returns the time 99.9% of the times recorded took at most, in milliseconds.
+	 */
+	public double get999thPercentileMillis();
+	
+	/**
+	 * Returns the longest time recorded, in milliseconds.
+	 */
+	public double getMaxMillis();
+}
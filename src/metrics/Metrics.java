@@ -0,0 +1,121 @@
+package src.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Holds the counters, latency histograms and gauges of the Jukebox by name, and
+ * shows each of them over JMX in the platform MBean server, as
+ * jukebox:type=Counter,name=<name> and so on, so they can be watched from
+ * JConsole or any other JMX client while the Jukebox runs.
+ * 
+ * Names are made of letters, digits, dots and underscores, such as
+ * song.requests, so that they can be used in an ObjectName as they are.
+ * 
+ * Asking for a metric by a name creates it the first time, and returns the
+ * same one after that. Code that records often keeps the metric in a field
+ * rather than asking for it each time. Recording only touches the metric, so
+ * costs tens of nanoseconds and allocates nothing, whether or not anything is
+ * reading it over JMX.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class Metrics
+{
+	// the domain of every metric's ObjectName
+	public static final String DOMAIN = "jukebox";
+	
+	// the single instance of Metrics
+	private static final Metrics instance = new Metrics();
+	
+	// every metric by name
+	private final ConcurrentHashMap<String, Object> metrics = new ConcurrentHashMap<String, Object>();
+	
+	// where metrics are shown over JMX
+	private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	
+	private Metrics()
+	{
+	}
+	
+	/**
+	 * Returns the single instance of Metrics.
+	 */
+	public static Metrics getInstance()
+	{
+		return instance;
+	}
+	
+	/**
+	 * Returns the counter with the given name, creating it if there is none.
+	 */
+	public Counter counter(String name)
+	{
+		return get(name, Counter.class, key -> new Counter());
+	}
+	
+	/**
+	 * Returns the latency histogram with the given name, creating it if there is
+	 * none.
+	 */
+	public LatencyHistogram histogram(String name)
+	{
+		return get(name, LatencyHistogram.class, key -> new LatencyHistogram());
+	}
+	
+	/**
+	 * Returns the gauge with the given name, reading its value from the given
+	 * supplier from now on. The gauge is created if there is none.
+	 */
+	public Gauge gauge(String name, LongSupplier value)
+	{
+		Gauge gauge = get(name, Gauge.class, key -> new Gauge(value));
+		gauge.setValue(value);
+		return gauge;
+	}
+	
+	/**
+	 * Returns the metric with the given name, creating and registering it with
+	 * the MBean server if there is none.
+	 * 
+	 * @throws IllegalArgumentException if the name is taken by another kind of metric.
+	 */
+	private <T> T get(String name, Class<T> type, Function<String, T> create)
+	{
+		Object metric = metrics.computeIfAbsent(name, key ->
+		{
+			T created = create.apply(key);
+			register(key, type, created);
+			return created;
+		});
+		if (!type.isInstance(metric))
+		{
+			throw new IllegalArgumentException(name + " is not a " + type.getSimpleName());
+		}
+		return type.cast(metric);
+	}
+	
+	/**
+	 * Shows the metric over JMX. A metric that can not be registered is still
+	 * recorded, but can not be read over JMX.
+	 */
+	private void register(String name, Class<?> type, Object metric)
+	{
+		try
+		{
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type.getSimpleName() + ",name=" + name);
+			server.registerMBean(metric, objectName);
+		}
+		catch (JMException e)
+		{
+			System.err.println("Failed to register metric " + name);
+			e.printStackTrace();
+		}
+	}
+}
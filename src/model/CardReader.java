@@ -2,6 +2,10 @@ package src.model;
 
 import java.util.Arrays;
 
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
 /**
  * Responsible for determining whether or not login credentials are valid.
  * 
@@ -9,6 +13,10 @@ import java.util.Arrays;
  */
 public class CardReader 
 {
+	// how long each attempt to sign in takes, and how many attempts fail
+	private static final LatencyHistogram LOGIN_TIMES = Metrics.getInstance().histogram("login");
+	private static final Counter FAILED_LOGINS = Metrics.getInstance().counter("login.failures");
+	
 	private JukeboxAccountCollection collection = JukeboxAccountCollection.getInstance();
 	
 	/**
@@ -21,6 +29,9 @@ public class CardReader
 	 */
 	public JukeboxAccount authenticate(String user, char[] pass)
 	{
+		long start = System.nanoTime();
+		JukeboxAccount found = null;
+		
 		//gets the account with the name user
 		JukeboxAccount account = collection.getAccount(user);
 		
@@ -33,10 +44,15 @@ public class CardReader
 			if (Arrays.equals(pass, password))
 			{
 				//if they're equal return the account
-				return account;
+				found = account;
 			}
 		}
 		//else return null
-		return null;
+		LOGIN_TIMES.recordSince(start);
+		if (found == null)
+		{
+			FAILED_LOGINS.increment();
+		}
+		return found;
 	}
 }
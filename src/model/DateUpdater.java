@@ -1,20 +1,18 @@
 package src.model;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.time.LocalDate;
-import java.util.Observable;
 
 /**
- * Defines an observable that will notify observers at midnight. Requires
- * updateEvent() to be called on every GUI event.
+ * Keeps track of the current day so that daily counters can reset themselves
+ * lazily. Each store of counters remembers the day on which it was counted and
+ * compares it with getDay() whenever it is used, clearing every counter at once
+ * on the first use after midnight. Requires updateEvent() to be called on every
+ * GUI event.
  * 
  * @author Taylor Heimbichner
  */
-public class DateUpdater extends Observable
+public class DateUpdater
 {
 	// single instance of DateUpdater
 	private static final DateUpdater dateUpdater = new DateUpdater();
@@ -22,8 +20,11 @@ public class DateUpdater extends Observable
 	// used to simulate midnights
 	private int midnightOffset = 0;
 	
+	// size of a saved update: the epoch day of lastUpdate
+	private static final int UPDATE_RECORD_WIDTH = Long.BYTES;
+	
 	// the date on which updateEvent() was last called
-	private LocalDate lastUpdate;
+	private volatile LocalDate lastUpdate;
 	
 	/**
 	 * Private constructor that initializes lastUpdate to right now
@@ -42,17 +43,26 @@ public class DateUpdater extends Observable
 	}
 	
 	/**
-	 * Updates observers if the date has changed since this method was last called.
+	 * Advances the current day if the date has changed since this method was
+	 * last called. Daily counters notice the new day the next time they are read.
 	 */
 	public void updateEvent()
 	{
 		LocalDate now = getDate();
-		if (!lastUpdate.equals(now))
+		if (!now.equals(lastUpdate))
 		{
-			setChanged();
-			notifyObservers();
+			lastUpdate = now;
+			Journal.getInstance().logDay(now.toEpochDay());
 		}
-		lastUpdate = now;
+	}
+	
+	/**
+	 * Returns the current day as an epoch day. Only changes when updateEvent()
+	 * sees a new date or a save is loaded.
+	 */
+	public long getDay()
+	{
+		return lastUpdate.toEpochDay();
 	}
 	
 	/**
@@ -71,25 +81,37 @@ public class DateUpdater extends Observable
 		midnightOffset++;
 	}
 	
+	/**
+	 * Sets the current day, as read from a save.
+	 */
+	void restoreDay(long day)
+	{
+		lastUpdate = LocalDate.ofEpochDay(day);
+	}
+	
 	/**
 	 * Saves the last update to a file
+	 * 
+	 * @return true if the save succeeded.
 	 */
-	public void saveUpdater()
+	public boolean saveUpdater()
 	{
-		try
+		long sequence = Journal.getInstance().getLastSequence();
+		try (Snapshot.Writer out = new Snapshot.Writer("update", Snapshot.UPDATE, sequence))
 		{
-			FileOutputStream bytesToDisk = new FileOutputStream("update");
-			ObjectOutputStream outFile = new ObjectOutputStream(bytesToDisk);
-			// outFile understands the writeObject(Object o) message.
-			outFile.writeObject(lastUpdate);
-			outFile.close(); // Always close the output file!
-			bytesToDisk.close();
+			out.writeStringTable();
+			out.beginRecords(1, UPDATE_RECORD_WIDTH);
+			out.putLong(getDay());
+			out.commit();
+			Journal.getInstance().setSnapshotSequence(Snapshot.UPDATE, sequence);
+			return true;
 		}
 		catch (IOException ioe)
 		{
 			System.err.println("Writing DateUpdater objects failed");
 			ioe.printStackTrace();
 		}
+		return false;
 	}
 	
 	/**
@@ -97,16 +119,18 @@ public class DateUpdater extends Observable
 	 */
 	public void loadUpdater()
 	{
-		try
+		try (Snapshot.Reader in = new Snapshot.Reader("update", Snapshot.UPDATE))
 		{
-			FileInputStream rawBytes = new FileInputStream("update");
-			ObjectInputStream inFile = new ObjectInputStream(rawBytes);
-			// Need to cast Objects to the class they are known to be
-			this.lastUpdate = (LocalDate) inFile.readObject();
-			inFile.close();
-			rawBytes.close();
+			if (in.beginRecords(UPDATE_RECORD_WIDTH) != 1)
+			{
+				throw new IOException("update should hold a single day");
+			}
+			long day = in.getLong();
+			in.endRecords();
+			restoreDay(day);
+			Journal.getInstance().setSnapshotSequence(Snapshot.UPDATE, in.getSequence());
 		}
-		catch (Exception e)
+		catch (IOException e)
 		{
 			System.err.println("Reading DateUpdater objects failed");
 			e.printStackTrace();
@@ -0,0 +1,737 @@
+package src.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/**
+ * An append-only log of every change made to the model since it was last
+ * saved, so that a crash does not lose a day of plays. Each record is written
+ * as:
+ * 
+ * <pre>
+ * int length, long sequence, byte type, payload, int CRC32 of sequence to payload
+ * </pre>
+ * 
+ * Records are collected in memory and a background thread writes and forces
+ * them to disk in batches every COMMIT_INTERVAL_MS, so many records share one
+ * fsync. Callers that must not lose a change call sync(), which waits until
+ * everything appended so far is on disk.
+ * 
+ * A batch that fails to be written is kept and written again every
+ * RETRY_INTERVAL_MS until it is on disk. Meanwhile sync() returns false at
+ * once rather than waiting, and the journal is not compacted.
+ * 
+ * On startup Jukebox loads the snapshots and then replays the records each
+ * snapshot does not already include. Once the snapshots are saved, compact()
+ * drops the records every snapshot includes and keeps the rest, so changes
+ * made while the model was being saved are not lost. The journal stays
+ * closed, and records nothing, until it is replayed or compacted.
+ * 
+ * Plays are counted before they are journaled. Code that counts plays and
+ * then journals them does so between beginChange() and endChange(), and a
+ * snapshot reads the plays and the last sequence between beginCapture() and
+ * endCapture(), so that it never holds a play whose record comes after its
+ * sequence, which would then be replayed onto it a second time.
+ * 
+ * Songs are recorded by file name, which no two songs in the library share,
+ * as many songs may share a name.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class Journal
+{
+	// record types
+	private static final byte DAY = 1;
+	private static final byte ACCOUNT_PLAY = 2;
+	private static final byte SONG_PLAY = 3;
+	private static final byte ENQUEUE = 4;
+	private static final byte DEQUEUE = 5;
+	
+	// the snapshot each record type changes, indexed by type
+	private static final int[] SNAPSHOT_KINDS =
+		{ 0, Snapshot.UPDATE, Snapshot.ACCOUNTS, Snapshot.LIBRARY, Snapshot.QUEUE, Snapshot.QUEUE };
+	
+	// size of a record apart from its payload: length, sequence, type, checksum
+	private static final int RECORD_OVERHEAD = 2 * Integer.BYTES + Long.BYTES + 1;
+	
+	// records are batched in buffers of this size
+	private static final int BUFFER_SIZE = 1 << 17;
+	
+	// how long the writer waits for more records before forcing a batch to disk
+	private static final long COMMIT_INTERVAL_MS = 5;
+	
+	// how long the writer waits before writing a failed batch again
+	private static final long RETRY_INTERVAL_MS = 1000;
+	
+	// the number of records after which the model should be saved and the journal emptied
+	private static final int COMPACT_THRESHOLD = 10000;
+	
+	// how long writing each batch and forcing it to disk takes
+	private static final LatencyHistogram WRITE_TIMES = Metrics.getInstance().histogram("journal.write");
+	
+	// the single instance of Journal
+	private static final Journal instance = new Journal();
+	
+	// the journal file
+	private final Path path = Paths.get("journal");
+	
+	// open while the journal is recording, null otherwise
+	private FileChannel channel;
+	
+	// records waiting to be written, and the batch being written
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+	private ByteBuffer writing = ByteBuffer.allocate(BUFFER_SIZE);
+	
+	// sequence of the last record appended, and of the last one forced to disk
+	private long lastSequence = 0;
+	private long syncedSequence = 0;
+	
+	// why the last batch could not be written, null once it has been
+	private IOException failure;
+	
+	// records appended since the journal was last emptied
+	private int recordCount = 0;
+	
+	// the sequence each snapshot on disk includes, indexed by Snapshot kind
+	private final long[] snapshotSequences = new long[5];
+	
+	// held shared while plays are counted and journaled, and exclusively while
+	// a snapshot reads them
+	private final StampedLock changes = new StampedLock();
+	
+	/**
+	 * Private constructor for the single instance
+	 */
+	private Journal() {}
+	
+	/**
+	 * Returns the single instance of Journal.
+	 */
+	public static Journal getInstance()
+	{
+		return instance;
+	}
+	
+	/**
+	 * Returns the sequence of the last record appended. A snapshot read now
+	 * includes every record up to and including this one, if the changes it
+	 * reads are journaled in the same step as they are made, or are read
+	 * between beginCapture() and endCapture().
+	 */
+	public synchronized long getLastSequence()
+	{
+		return lastSequence;
+	}
+	
+	/**
+	 * Records the sequence a snapshot includes when it is loaded or saved, so
+	 * replay() skips the records already in it and compact() may drop them.
+	 */
+	synchronized void setSnapshotSequence(int kind, long sequence)
+	{
+		snapshotSequences[kind] = sequence;
+	}
+	
+	/**
+	 * Starts counting plays that are then journaled. Snapshots wait to read the
+	 * plays until endChange() is called with the stamp returned.
+	 */
+	public long beginChange()
+	{
+		return changes.readLock();
+	}
+	
+	/**
+	 * Ends a change started by beginChange().
+	 */
+	public void endChange(long stamp)
+	{
+		changes.unlockRead(stamp);
+	}
+	
+	/**
+	 * Waits until no plays are being counted and then keeps them from changing,
+	 * so that a snapshot can read them and the last sequence together. Should
+	 * be held only while the values are copied, not while they are written.
+	 */
+	long beginCapture()
+	{
+		return changes.writeLock();
+	}
+	
+	/**
+	 * Lets plays be counted again after beginCapture().
+	 */
+	void endCapture(long stamp)
+	{
+		changes.unlockWrite(stamp);
+	}
+	
+	/**
+	 * Returns true once enough records have been appended that the model should
+	 * be saved to keep the journal short.
+	 */
+	public synchronized boolean isCompactionDue()
+	{
+		return recordCount >= COMPACT_THRESHOLD;
+	}
+	
+	/**
+	 * Records that DateUpdater has moved on to the given day.
+	 */
+	void logDay(long day)
+	{
+		byte[] record = newRecord(DAY, Long.BYTES);
+		ByteBuffer.wrap(record, RECORD_OVERHEAD - Integer.BYTES, Long.BYTES).putLong(day);
+		append(record);
+	}
+	
+	/**
+	 * Records that an account played a song of the given length.
+	 */
+	void logAccountPlay(String user, int length)
+	{
+		byte[] name = user.getBytes(StandardCharsets.UTF_8);
+		byte[] record = newRecord(ACCOUNT_PLAY, Integer.BYTES + name.length);
+		ByteBuffer.wrap(record, RECORD_OVERHEAD - Integer.BYTES, Integer.BYTES + name.length)
+			.putInt(length).put(name);
+		append(record);
+	}
+	
+	/**
+	 * Records that the song in the given file was played.
+	 * 
+	 * @param fileName The song's file, as given by Song.getFileName().
+	 */
+	void logSongPlay(String fileName)
+	{
+		append(newStringRecord(SONG_PLAY, fileName));
+	}
+	
+	/**
+	 * Records that the song in the given file was added to the queue.
+	 * 
+	 * @param fileName The song's file, as given by Song.getFileName().
+	 */
+	void logEnqueue(String fileName)
+	{
+		append(newStringRecord(ENQUEUE, fileName));
+	}
+	
+	/**
+	 * Records that the oldest song was removed from the queue.
+	 */
+	void logDequeue()
+	{
+		append(newRecord(DEQUEUE, 0));
+	}
+	
+	/**
+	 * Makes a record whose payload is a single string.
+	 */
+	private static byte[] newStringRecord(byte type, String s)
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		byte[] record = newRecord(type, bytes.length);
+		System.arraycopy(bytes, 0, record, RECORD_OVERHEAD - Integer.BYTES, bytes.length);
+		return record;
+	}
+	
+	/**
+	 * Makes a record with the given type and room for a payload of the given
+	 * size. The sequence and checksum are filled in by append().
+	 */
+	private static byte[] newRecord(byte type, int payloadSize)
+	{
+		byte[] record = new byte[RECORD_OVERHEAD + payloadSize];
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		buffer.putInt(record.length - Integer.BYTES);
+		buffer.position(Integer.BYTES + Long.BYTES);
+		buffer.put(type);
+		return record;
+	}
+	
+	/**
+	 * Numbers the record and adds it to the pending batch. Does nothing while
+	 * the journal is closed.
+	 */
+	private synchronized void append(byte[] record)
+	{
+		if (channel == null)
+		{
+			return;
+		}
+		if (record.length > BUFFER_SIZE)
+		{
+			System.err.println("Journal record is too large to write");
+			return;
+		}
+		while (channel != null && pending.remaining() < record.length)
+		{
+			// the writer is busy with the previous batch
+			if (!waitForWriter())
+			{
+				return;
+			}
+		}
+		if (channel == null)
+		{
+			return;
+		}
+		lastSequence++;
+		recordCount++;
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		buffer.putLong(Integer.BYTES, lastSequence);
+		CRC32 crc = new CRC32();
+		crc.update(record, Integer.BYTES, record.length - 2 * Integer.BYTES);
+		buffer.putInt(record.length - Integer.BYTES, (int) crc.getValue());
+		pending.put(record);
+		notifyAll();
+	}
+	
+	/**
+	 * Waits until every record appended so far has been forced to disk.
+	 * 
+	 * @return false if they could not be written, or the wait was interrupted.
+	 */
+	public synchronized boolean sync()
+	{
+		long target = lastSequence;
+		while (channel != null && syncedSequence < target)
+		{
+			if (failure != null || !waitForWriter())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Waits to be notified by the writer thread.
+	 * 
+	 * @return false if the waiting thread was interrupted.
+	 */
+	private boolean waitForWriter()
+	{
+		try
+		{
+			wait();
+			return true;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Writes batches of records to disk for as long as the journal is open.
+	 */
+	private void writeLoop(FileChannel out)
+	{
+		while (true)
+		{
+			synchronized (this)
+			{
+				while (channel == out && pending.position() == 0)
+				{
+					if (!waitForWriter())
+					{
+						return;
+					}
+				}
+				if (channel != out)
+				{
+					return;
+				}
+			}
+			
+			// let more records join this batch
+			try
+			{
+				Thread.sleep(COMMIT_INTERVAL_MS);
+			}
+			catch (InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+			
+			long sequence;
+			synchronized (this)
+			{
+				ByteBuffer swap = writing;
+				writing = pending;
+				pending = swap;
+				sequence = lastSequence;
+				// appenders may now fill pending while we write
+				notifyAll();
+			}
+			
+			writing.flip();
+			if (!write(out))
+			{
+				return;
+			}
+			writing.clear();
+			
+			synchronized (this)
+			{
+				syncedSequence = sequence;
+				failure = null;
+				notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Writes the batch being written and forces it to disk, writing the whole
+	 * batch again after each failure.
+	 * 
+	 * @return false if the journal was closed before the batch could be written.
+	 */
+	private boolean write(FileChannel out)
+	{
+		while (true)
+		{
+			long start = System.nanoTime();
+			long position = -1;
+			try
+			{
+				position = out.position();
+				while (writing.hasRemaining())
+				{
+					out.write(writing);
+				}
+				out.force(false);
+				WRITE_TIMES.recordSince(start);
+				return true;
+			}
+			catch (IOException ioe)
+			{
+				System.err.println("Writing Journal records failed");
+				ioe.printStackTrace();
+				synchronized (this)
+				{
+					failure = ioe;
+					// tell waiting callers the records are not on disk
+					notifyAll();
+				}
+			}
+			
+			try
+			{
+				Thread.sleep(RETRY_INTERVAL_MS);
+				synchronized (this)
+				{
+					if (channel != out)
+					{
+						return false;
+					}
+				}
+				if (position >= 0)
+				{
+					out.position(position);
+				}
+				writing.rewind();
+			}
+			catch (InterruptedException | IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Opens the journal at the given position of the file and starts the writer.
+	 */
+	private void open(long position, boolean truncate) throws IOException
+	{
+		FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		if (truncate)
+		{
+			// drop a torn or stale tail before appending
+			out.truncate(position);
+			out.force(false);
+		}
+		out.position(position);
+		channel = out;
+		syncedSequence = lastSequence;
+		failure = null;
+		Thread writer = new Thread(() -> writeLoop(out), "Journal writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/**
+	 * Stops recording, after writing every record appended so far, including
+	 * any appended while waiting for the writer, unless they can not be written.
+	 */
+	private void close()
+	{
+		while (channel != null && syncedSequence < lastSequence && failure == null)
+		{
+			if (!waitForWriter())
+			{
+				break;
+			}
+		}
+		if (channel != null)
+		{
+			try
+			{
+				channel.close();
+			}
+			catch (IOException ioe)
+			{
+				ioe.printStackTrace();
+			}
+			channel = null;
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * Drops the records that every snapshot includes, keeping those appended
+	 * since the oldest snapshot was read, and goes on recording after them. The
+	 * last day dropped is kept too, so replay knows which day the records that
+	 * follow belong to. The file is replaced in one step, so a crash leaves
+	 * either the old journal or the new one. Records appended meanwhile wait.
+	 * Does nothing while records can not be written, as the journal would lose
+	 * them.
+	 */
+	public synchronized void compact()
+	{
+		if (failure != null)
+		{
+			System.err.println("Not compacting Journal, its records can not be written");
+			return;
+		}
+		long included = Long.MAX_VALUE;
+		for (int kind = Snapshot.LIBRARY; kind <= Snapshot.UPDATE; kind++)
+		{
+			included = Math.min(included, snapshotSequences[kind]);
+		}
+		close();
+		Path tempPath = Paths.get(path + ".tmp");
+		try
+		{
+			ByteBuffer in = ByteBuffer.wrap(Files.exists(path) ? Files.readAllBytes(path) : new byte[0]);
+			ByteBuffer kept = ByteBuffer.allocate(in.capacity());
+			CRC32 crc = new CRC32();
+			int lastDay = -1;
+			int count = 0;
+			int length;
+			while ((length = nextRecord(in, crc)) > 0)
+			{
+				int start = in.position();
+				long sequence = in.getLong(start + Integer.BYTES);
+				if (sequence > included)
+				{
+					if (lastDay >= 0)
+					{
+						kept.put(in.array(), lastDay, in.getInt(lastDay) + Integer.BYTES);
+						lastDay = -1;
+					}
+					kept.put(in.array(), start, length);
+					count++;
+				}
+				else if (in.get(start + Integer.BYTES + Long.BYTES) == DAY)
+				{
+					lastDay = start;
+				}
+				in.position(start + length);
+			}
+			
+			kept.flip();
+			try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+			{
+				while (kept.hasRemaining())
+				{
+					out.write(kept);
+				}
+				out.force(false);
+			}
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			recordCount = count;
+			open(kept.limit(), true);
+		}
+		catch (IOException ioe)
+		{
+			System.err.println("Compacting Journal failed");
+			ioe.printStackTrace();
+			try
+			{
+				// the old journal is untouched, go on recording after it
+				Files.deleteIfExists(tempPath);
+				open(Files.exists(path) ? Files.size(path) : 0, false);
+			}
+			catch (IOException reopen)
+			{
+				System.err.println("Reopening Journal failed");
+				reopen.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Checks the record at the position of the buffer.
+	 * 
+	 * @return The size of the record, or 0 if there is no whole, valid record
+	 *         there, as at the end of the file or after a torn write.
+	 */
+	private static int nextRecord(ByteBuffer in, CRC32 crc)
+	{
+		if (in.remaining() < Integer.BYTES)
+		{
+			return 0;
+		}
+		int length = in.getInt(in.position());
+		if (length < RECORD_OVERHEAD - Integer.BYTES || length > in.remaining() - Integer.BYTES)
+		{
+			return 0;
+		}
+		int start = in.position() + Integer.BYTES;
+		crc.reset();
+		crc.update(in.array(), start, length - Integer.BYTES);
+		if (in.getInt(start + length - Integer.BYTES) != (int) crc.getValue())
+		{
+			return 0;
+		}
+		byte type = in.get(start + Long.BYTES);
+		if (type < DAY || type > DEQUEUE)
+		{
+			return 0;
+		}
+		return length + Integer.BYTES;
+	}
+	
+	/**
+	 * Applies every record that the loaded snapshots do not already include to
+	 * the given model, then starts recording after the last valid record. A torn
+	 * record at the end of the file, left by a crash, ends the replay.
+	 * 
+	 * @param juke The model that was just loaded from the snapshots
+	 */
+	public synchronized void replay(Jukebox juke)
+	{
+		close();
+		long end = 0;
+		int applied = 0;
+		lastSequence = 0;
+		for (long sequence : snapshotSequences)
+		{
+			lastSequence = Math.max(lastSequence, sequence);
+		}
+		// whether each song in the queue is in the model's queue, or was left out
+		// because its song has left the library, so each dequeue removes the
+		// song it removed before
+		ArrayDeque<Boolean> queued = new ArrayDeque<Boolean>();
+		for (int i = juke.getSongQueue().getSongCount(); i > 0; i--)
+		{
+			queued.add(true);
+		}
+		try
+		{
+			ByteBuffer in = ByteBuffer.wrap(Files.exists(path) ? Files.readAllBytes(path) : new byte[0]);
+			CRC32 crc = new CRC32();
+			int size;
+			while ((size = nextRecord(in, crc)) > 0)
+			{
+				int length = size - Integer.BYTES;
+				int start = in.position() + Integer.BYTES;
+				long sequence = in.getLong(start);
+				byte type = in.get(start + Long.BYTES);
+				int payload = start + Long.BYTES + 1;
+				int payloadSize = length - Long.BYTES - 1 - Integer.BYTES;
+				
+				// days are always applied so that plays count towards the right one
+				if (type == DAY || sequence > snapshotSequences[SNAPSHOT_KINDS[type]])
+				{
+					apply(juke, type, in, payload, payloadSize, queued);
+					applied++;
+				}
+				lastSequence = Math.max(lastSequence, sequence);
+				in.position(start + length);
+				end = in.position();
+			}
+			recordCount = applied;
+			open(end, true);
+		}
+		catch (IOException | IndexOutOfBoundsException e)
+		{
+			System.err.println("Replaying Journal records failed");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Applies a single record to the model. The journal is closed while this
+	 * runs, so the changes are not recorded again.
+	 * 
+	 * @param queued Whether each song in the queue so far was added to the model.
+	 */
+	private static void apply(Jukebox juke, byte type, ByteBuffer in, int payload, int payloadSize,
+			ArrayDeque<Boolean> queued)
+	{
+		SongLibrary library = juke.getSongLibrary();
+		if (type == DAY)
+		{
+			DateUpdater.getInstance().restoreDay(in.getLong(payload));
+		}
+		else if (type == ACCOUNT_PLAY)
+		{
+			int length = in.getInt(payload);
+			String user = new String(in.array(), payload + Integer.BYTES,
+					payloadSize - Integer.BYTES, StandardCharsets.UTF_8);
+			JukeboxAccount account = JukeboxAccountCollection.getInstance().getAccount(user);
+			if (account != null)
+			{
+				account.playSong(length);
+			}
+		}
+		else if (type == SONG_PLAY || type == ENQUEUE)
+		{
+			String fileName = new String(in.array(), payload, payloadSize, StandardCharsets.UTF_8);
+			List<Song> songs = library.getSongsByFile(fileName);
+			Song song = songs.isEmpty() ? null : songs.get(0);
+			if (song != null && type == SONG_PLAY)
+			{
+				song.playSong();
+			}
+			else if (type == ENQUEUE)
+			{
+				if (song != null)
+				{
+					juke.getSongQueue().addToQueue(song);
+				}
+				queued.add(song != null);
+			}
+		}
+		else if (type == DEQUEUE && !queued.isEmpty())
+		{
+			if (queued.poll() && juke.getSongQueue().peekAtQueue() != null)
+			{
+				juke.getSongQueue().removeFromQueue();
+			}
+		}
+	}
+}
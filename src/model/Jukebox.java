@@ -1,5 +1,8 @@
 package src.model;
 
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
 /**
  * Stores references to disparate model elements and allows access to them.
  * 
@@ -7,6 +10,11 @@ package src.model;
  */
 public class Jukebox
 {
+	// How long saving, loading and committing the model take
+	private static final LatencyHistogram SAVE_TIMES = Metrics.getInstance().histogram("model.save");
+	private static final LatencyHistogram LOAD_TIMES = Metrics.getInstance().histogram("model.load");
+	private static final LatencyHistogram COMMIT_TIMES = Metrics.getInstance().histogram("model.commit");
+	
 	// Holds the currently playing Songs
 	private final ReadableSongQueue songQueue = new ReadableSongQueue();
 	
@@ -19,6 +27,16 @@ public class Jukebox
 	// Represents the current user
 	private JukeboxAccount currentUser;
 	
+	/**
+	 * Creates a Jukebox, whose queue's length in songs and in seconds are shown
+	 * as the metrics queue.songs and queue.seconds.
+	 */
+	public Jukebox()
+	{
+		Metrics.getInstance().gauge("queue.songs", songQueue::getSongCount);
+		Metrics.getInstance().gauge("queue.seconds", songQueue::getQueuedSeconds);
+	}
+	
 	/**
 	 * Gets the Song Library
 	 */
@@ -71,24 +89,67 @@ public class Jukebox
 	}
 	
 	/**
-	 * Saves the model data
+	 * Saves the model data, then drops the journal records that every snapshot
+	 * now includes. Songs may go on being requested and played while the model
+	 * is saved; their records are kept until the next save.
 	 */
-	public void save()
+	public synchronized void save()
 	{
+		long start = System.nanoTime();
 		getSongLibrary().saveLibrary();
 		JukeboxAccountCollection.getInstance().saveAccounts();
 		getSongQueue().saveQueue();
 		DateUpdater.getInstance().saveUpdater();
+		
+		// a snapshot that failed to save keeps its older sequence, so the
+		// records it is missing are kept
+		Journal.getInstance().compact();
+		SAVE_TIMES.recordSince(start);
 	}
 	
 	/**
-	 * Loads the model data
+	 * Loads the model data, then replays the changes made since it was saved.
 	 */
-	public void load()
+	public synchronized void load()
 	{
+		long start = System.nanoTime();
 		getSongLibrary().loadLibrary();
 		JukeboxAccountCollection.getInstance().loadAccounts();
 		getSongQueue().loadQueue();
 		DateUpdater.getInstance().loadUpdater();
+		Journal.getInstance().replay(this);
+		LOAD_TIMES.recordSince(start);
+	}
+	
+	/**
+	 * Waits until every change made so far is safely in the journal, then saves
+	 * the model if the journal has grown long enough to be compacted. Safe to
+	 * call from many threads at once; only one of them saves.
+	 * 
+	 * @return false if the changes could not be written to the journal, so
+	 *         would be lost in a crash.
+	 */
+	public boolean commit()
+	{
+		long start = System.nanoTime();
+		Journal journal = Journal.getInstance();
+		if (!journal.sync())
+		{
+			COMMIT_TIMES.recordSince(start);
+			return false;
+		}
+		if (journal.isCompactionDue())
+		{
+			synchronized (this)
+			{
+				// another thread may have saved while this one waited
+				if (journal.isCompactionDue())
+				{
+					save();
+				}
+			}
+		}
+		COMMIT_TIMES.recordSince(start);
+		return true;
 	}
 }
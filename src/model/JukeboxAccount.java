@@ -1,22 +1,44 @@
 package src.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.List;
 
 /**
  * Stores all of a user's information, including the username and password, time
- * remaining, and number of songs played.
+ * remaining, and number of songs played. The time and plays of every account
+ * are kept together in PlayCounters rather than by each account.
  * 
  * @author Sean Gallagher
  */
-public class JukeboxAccount implements Observer, Serializable
+public class JukeboxAccount implements Serializable
 {
+	// matches the saves written before JukeboxAccount stopped being an Observer
+	private static final long serialVersionUID = 367523826159374201L;
+	
+	// the fields of a saved account, which still include its time and plays
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("username", String.class),
+		new ObjectStreamField("password", char[].class),
+		new ObjectStreamField("time", int.class),
+		new ObjectStreamField("timesPlayed", int.class),
+		new ObjectStreamField("day", long.class)
+	};
+	
 	private static final int MAX_PLAYS = 3;
+	
+	// the column of seconds left in counters
+	private static final int TIME = 1;
+	
+	// the plays today and the seconds left of every account, by ID
+	private static final PlayCounters counters = new PlayCounters(2);
+	
 	private String username;
 	private char[] password;
-	private int time;
-	private int timesPlayed;
+	private transient int id;	//the index of the account's counters
 	
 	/**
 	 * Constructor for the JukeboxAccount
@@ -26,8 +48,20 @@ public class JukeboxAccount implements Observer, Serializable
 	{
 		username = user;
 		password = pass;
-		time = 90000;	//this is 1500 minutes in seconds, seconds just seems easier to work with
-		timesPlayed = 0;
+		id = counters.newId();
+		counters.set(TIME, id, 90000);	//this is 1500 minutes in seconds, seconds just seems easier to work with
+	}
+	
+	/**
+	 * Constructor for an account read from a saved collection
+	 */
+	JukeboxAccount(String user, char[] pass, int time, int timesPlayed, long day)
+	{
+		username = user;
+		password = pass;
+		id = counters.newId();
+		counters.set(TIME, id, time);
+		counters.restorePlays(id, timesPlayed, day);
 	}
 	
 	/**
@@ -51,7 +85,7 @@ public class JukeboxAccount implements Observer, Serializable
 	 */
 	public int getTime()
 	{
-		return time;
+		return counters.get(TIME, id);
 	}
 	
 	/**
@@ -59,7 +93,15 @@ public class JukeboxAccount implements Observer, Serializable
 	 */
 	public boolean getCanPlay()
 	{
-		return timesPlayed < MAX_PLAYS;
+		return hasPlaysLeft(1);
+	}
+	
+	/**
+	 * Returns whether or not the user can play this many more songs today
+	 */
+	public boolean hasPlaysLeft(int songs)
+	{
+		return getTimesPlayed() + songs <= MAX_PLAYS;
 	}
 	
 	/**
@@ -75,7 +117,7 @@ public class JukeboxAccount implements Observer, Serializable
 	 */
 	public int getTimesPlayed()
 	{
-		return timesPlayed;
+		return counters.get(PlayCounters.PLAYS, id);
 	}
 	
 	/**
@@ -83,14 +125,103 @@ public class JukeboxAccount implements Observer, Serializable
 	 */
 	public void playSong(int length)
 	{
-		timesPlayed++;
-		time -= length;
+		Journal journal = Journal.getInstance();
+		long change = journal.beginChange();
+		try
+		{
+			counters.add(PlayCounters.PLAYS, id, 1);
+			counters.add(TIME, id, -length);
+			journal.logAccountPlay(username, length);
+		}
+		finally
+		{
+			journal.endChange(change);
+		}
+	}
+	
+	/**
+	 * Takes a play today and the time for each of the songs, if the user has
+	 * enough of both, but does not record the plays in the journal. Should be
+	 * called within Journal.beginChange(), until the plays are released or
+	 * confirmed. The plays are taken first and given back if the time can not
+	 * be, so a request made meanwhile may find the user out of plays although
+	 * the plays are not kept.
+	 * 
+	 * @return true if the plays and time were taken.
+	 */
+	public boolean reservePlays(List<Song> songs)
+	{
+		int seconds = totalLength(songs);
+		if (!counters.addIfAtMost(PlayCounters.PLAYS, id, songs.size(), MAX_PLAYS))
+		{
+			return false;
+		}
+		if (!counters.subtractIfAtLeast(TIME, id, seconds))
+		{
+			counters.subtractIfAtLeast(PlayCounters.PLAYS, id, songs.size());
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Gives back the plays and time taken by reservePlays(). The plays are not
+	 * given back if the plays have been reset at midnight since.
+	 */
+	public void releasePlays(List<Song> songs)
+	{
+		counters.add(TIME, id, totalLength(songs));
+		counters.subtractIfAtLeast(PlayCounters.PLAYS, id, songs.size());
+	}
+	
+	/**
+	 * Records the plays taken by reservePlays() in the journal.
+	 */
+	public void confirmPlays(List<Song> songs)
+	{
+		for (Song song : songs)
+		{
+			Journal.getInstance().logAccountPlay(username, song.getLength());
+		}
+	}
+	
+	// Returns the length of all the songs together, in seconds
+	private static int totalLength(List<Song> songs)
+	{
+		int seconds = 0;
+		for (Song song : songs)
+		{
+			seconds += song.getLength();
+		}
+		return seconds;
+	}
+	
+	// Reads an account saved with its time and plays, and moves them into counters.
+	// Saves written before the day field existed count plays for the current day.
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream.GetField fields = in.readFields();
+		username = (String) fields.get("username", null);
+		password = (char[]) fields.get("password", null);
+		long day = fields.get("day", 0L);
+		if (day == 0)
+		{
+			day = DateUpdater.getInstance().getDay();
+		}
+		id = counters.newId();
+		counters.set(TIME, id, fields.get("time", 0));
+		counters.restorePlays(id, fields.get("timesPlayed", 0), day);
 	}
 	
-	// Updates the timesPlayed variable, resetting it to 0 every midnight.
-	@Override
-	public void update(Observable o, Object arg)
+	// Saves an account as it was saved when it kept its own time and plays
+	private void writeObject(ObjectOutputStream out) throws IOException
 	{
-		timesPlayed = 0;
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("username", username);
+		fields.put("password", password);
+		fields.put("time", getTime());
+		fields.put("timesPlayed", getTimesPlayed());
+		fields.put("day", DateUpdater.getInstance().getDay());
+		out.writeFields();
 	}
 }
@@ -1,27 +1,32 @@
 package src.model;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Stores and allows access to a list of user acconts.
+ * Stores and allows access to a list of user acconts. Accounts are kept in a
+ * concurrent map keyed by username so that many logins can be served at once
+ * without locking.
  * 
  * @author Sean Gallagher
  */
 public class JukeboxAccountCollection implements Serializable
 {
-	private ArrayList<JukeboxAccount> accounts = new ArrayList<JukeboxAccount>();
+	// accounts keyed by username, replaced as a whole when loading
+	private volatile ConcurrentHashMap<String, JukeboxAccount> accounts =
+			new ConcurrentHashMap<String, JukeboxAccount>();
+	
+	// size of a saved account: username, password, time, times played, day
+	private static final int ACCOUNT_RECORD_WIDTH = 4 * Integer.BYTES + Long.BYTES;
 	
 	private static final JukeboxAccountCollection instance = new JukeboxAccountCollection();
 	
 	/**
 	 * Constructor for the collection
-	 * The accounts are added to the arraylist
+	 * The accounts are added to the map
 	 */
 	private JukeboxAccountCollection()
 	{
@@ -50,8 +55,7 @@ public class JukeboxAccountCollection implements Serializable
 	private void addAccount(String name, char[] pass)
 	{
 		JukeboxAccount acc = new JukeboxAccount(name, pass);
-		accounts.add(acc);
-		DateUpdater.getInstance().addObserver(acc);
+		accounts.put(name, acc);
 	}
 	
 	/**
@@ -62,57 +66,116 @@ public class JukeboxAccountCollection implements Serializable
 	 */
 	public JukeboxAccount getAccount(String user)
 	{
-		for (int i = 0; i < accounts.size(); i++)
+		if (user == null)
 		{
-			if (accounts.get(i).getUser().compareTo(user) == 0)
-			{
-				return accounts.get(i);
-			}
+			return null;
+		}
+		return accounts.get(user);
+	}
+	
+	/**
+	 * Replaces every account in the collection with the given accounts.
+	 */
+	void replaceAccounts(List<JukeboxAccount> list)
+	{
+		ConcurrentHashMap<String, JukeboxAccount> loaded =
+				new ConcurrentHashMap<String, JukeboxAccount>(list.size() * 2);
+		for (JukeboxAccount user : list)
+		{
+			loaded.put(user.getUser(), user);
 		}
-		return null;
+		// publish the fully built map in one step so readers never see it half loaded
+		this.accounts = loaded;
 	}
 	
 	/**
 	 * Saves the accounts to a file
+	 * 
+	 * @return true if the save succeeded.
 	 */
-	public void saveAccounts()
+	public boolean saveAccounts()
 	{
+		// take a stable copy, accounts may be replaced while we are writing
+		List<JukeboxAccount> list = new ArrayList<JukeboxAccount>(accounts.values());
+		
+		// time and plays are read with no play half made, together with the
+		// sequence of the last record they include, and times played are saved
+		// as counted on the current day
+		Journal journal = Journal.getInstance();
+		int[] times = new int[list.size()];
+		int[] plays = new int[list.size()];
+		long sequence;
+		long day;
+		long capture = journal.beginCapture();
 		try
 		{
-			FileOutputStream bytesToDisk = new FileOutputStream("accounts");
-			ObjectOutputStream outFile = new ObjectOutputStream(bytesToDisk);
-			// outFile understands the writeObject(Object o) message.
-			outFile.writeObject(accounts);
-			outFile.close(); // Always close the output file!
-			bytesToDisk.close();
+			sequence = journal.getLastSequence();
+			day = DateUpdater.getInstance().getDay();
+			for (int i = 0; i < list.size(); i++)
+			{
+				times[i] = list.get(i).getTime();
+				plays[i] = list.get(i).getTimesPlayed();
+			}
+		}
+		finally
+		{
+			journal.endCapture(capture);
+		}
+		
+		try (Snapshot.Writer out = new Snapshot.Writer("accounts", Snapshot.ACCOUNTS, sequence))
+		{
+			for (JukeboxAccount user : list)
+			{
+				out.intern(user.getUser());
+				out.intern(new String(user.getPass()));
+			}
+			out.writeStringTable();
+			
+			out.beginRecords(list.size(), ACCOUNT_RECORD_WIDTH);
+			for (int i = 0; i < list.size(); i++)
+			{
+				JukeboxAccount user = list.get(i);
+				out.putInt(out.intern(user.getUser()));
+				out.putInt(out.intern(new String(user.getPass())));
+				out.putInt(times[i]);
+				out.putInt(plays[i]);
+				out.putLong(day);
+			}
+			out.commit();
+			journal.setSnapshotSequence(Snapshot.ACCOUNTS, sequence);
+			return true;
 		}
 		catch (IOException ioe)
 		{
 			System.err.println("Writing JukeboxAccountCollection objects failed");
 			ioe.printStackTrace();
 		}
+		return false;
 	}
 	
 	/**
 	 * Loads the accounts from a file
 	 */
-	@SuppressWarnings("unchecked")
 	public void loadAccounts()
 	{
-		try
+		try (Snapshot.Reader in = new Snapshot.Reader("accounts", Snapshot.ACCOUNTS))
 		{
-			FileInputStream rawBytes = new FileInputStream("accounts");
-			ObjectInputStream inFile = new ObjectInputStream(rawBytes);
-			// Need to cast Objects to the class they are known to be
-			this.accounts = (ArrayList<JukeboxAccount>) inFile.readObject();
-			for (JukeboxAccount user : accounts)
+			int count = in.beginRecords(ACCOUNT_RECORD_WIDTH);
+			List<JukeboxAccount> list = new ArrayList<JukeboxAccount>(count);
+			for (int i = 0; i < count; i++)
 			{
-				DateUpdater.getInstance().addObserver(user);
+				String user = in.getString(in.getInt());
+				char[] pass = in.getString(in.getInt()).toCharArray();
+				int time = in.getInt();
+				int timesPlayed = in.getInt();
+				long day = in.getLong();
+				list.add(new JukeboxAccount(user, pass, time, timesPlayed, day));
 			}
-			inFile.close();
-			rawBytes.close();
+			in.endRecords();
+			replaceAccounts(list);
+			Journal.getInstance().setSnapshotSequence(Snapshot.ACCOUNTS, in.getSequence());
 		}
-		catch (Exception e)
+		catch (IOException e)
 		{
 			System.err.println("Reading JukeboxAccountCollection objects failed");
 		}
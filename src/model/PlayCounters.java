@@ -0,0 +1,191 @@
+package src.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Keeps the counters of every song, or of every account, in columns of ints
+ * rather than in fields of their own. Each song or account is given an ID when
+ * it is built, which is the index of its counters in every column.
+ * 
+ * Column PLAYS counts plays on the current day, and is cleared for every ID at
+ * once on the first use after DateUpdater reaches a new day. Any other columns
+ * are kept from day to day. The columns are held in pages that never move once
+ * allocated, so counters may be read and changed from any thread without a lock.
+ * A counter can be checked against a limit and changed in one step, with a
+ * compare and set, so threads racing for the last play can not both have it.
+ * 
+ * IDs are never reused, so a store grows by four bytes a column for every song
+ * or account built while the Jukebox runs.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class PlayCounters
+{
+	// the column of plays on the current day
+	public static final int PLAYS = 0;
+	
+	// IDs in a page, a power of two
+	private static final int PAGE_SHIFT = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	
+	// reads and changes the counters of a page atomically
+	private static final VarHandle COUNTER = MethodHandles.arrayElementVarHandle(int[].class);
+	
+	// the number of columns
+	private final int columns;
+	
+	// the pages of each column, by column and then page, replaced as the store grows
+	private volatile int[][][] pages;
+	
+	// the next ID given out
+	private int next;
+	
+	// the epoch day on which PLAYS was counted
+	private volatile long day = DateUpdater.getInstance().getDay();
+	
+	/**
+	 * Creates an empty store with the given number of columns, PLAYS and then
+	 * columns - 1 that are kept from day to day.
+	 */
+	public PlayCounters(int columns)
+	{
+		this.columns = columns;
+		pages = new int[columns][0][];
+	}
+	
+	/**
+	 * Gives out a new ID, whose counters are all 0.
+	 */
+	public synchronized int newId()
+	{
+		int id = next++;
+		int page = id >>> PAGE_SHIFT;
+		if (page == pages[PLAYS].length)
+		{
+			int[][][] grown = new int[columns][][];
+			for (int column = 0; column < columns; column++)
+			{
+				grown[column] = Arrays.copyOf(pages[column], page + 1);
+				grown[column][page] = new int[PAGE_SIZE];
+			}
+			pages = grown;
+		}
+		return id;
+	}
+	
+	/**
+	 * Returns the counter of the ID in the given column.
+	 */
+	public int get(int column, int id)
+	{
+		return (int) COUNTER.getVolatile(page(column, id), id & PAGE_MASK);
+	}
+	
+	/**
+	 * Adds delta to the counter of the ID in the given column.
+	 * 
+	 * @return The new value of the counter.
+	 */
+	public int add(int column, int id, int delta)
+	{
+		return (int) COUNTER.getAndAdd(page(column, id), id & PAGE_MASK, delta) + delta;
+	}
+	
+	/**
+	 * Sets the counter of the ID in the given column.
+	 */
+	public void set(int column, int id, int value)
+	{
+		COUNTER.setVolatile(page(column, id), id & PAGE_MASK, value);
+	}
+	
+	/**
+	 * Adds amount to the counter of the ID in the given column, if the counter
+	 * is then at most limit.
+	 * 
+	 * @return true if the counter was added to.
+	 */
+	public boolean addIfAtMost(int column, int id, int amount, int limit)
+	{
+		int[] page = page(column, id);
+		int index = id & PAGE_MASK;
+		int count;
+		do
+		{
+			count = (int) COUNTER.getVolatile(page, index);
+			if (count > limit - amount)
+			{
+				return false;
+			}
+		}
+		while (!COUNTER.compareAndSet(page, index, count, count + amount));
+		return true;
+	}
+	
+	/**
+	 * Subtracts amount from the counter of the ID in the given column, if the
+	 * counter is at least amount.
+	 * 
+	 * @return true if the counter was subtracted from.
+	 */
+	public boolean subtractIfAtLeast(int column, int id, int amount)
+	{
+		int[] page = page(column, id);
+		int index = id & PAGE_MASK;
+		int count;
+		do
+		{
+			count = (int) COUNTER.getVolatile(page, index);
+			if (count < amount)
+			{
+				return false;
+			}
+		}
+		while (!COUNTER.compareAndSet(page, index, count, count - amount));
+		return true;
+	}
+	
+	/**
+	 * Sets the plays of the ID to the plays counted on the given epoch day, as
+	 * read from a save. Plays counted before today are dropped.
+	 */
+	public void restorePlays(int id, int plays, long playDay)
+	{
+		set(PLAYS, id, (playDay == DateUpdater.getInstance().getDay()) ? plays : 0);
+	}
+	
+	/**
+	 * Returns the page holding the counter of the ID in the given column,
+	 * clearing PLAYS first if DateUpdater has moved on since it was counted.
+	 */
+	private int[] page(int column, int id)
+	{
+		if (column == PLAYS && day != DateUpdater.getInstance().getDay())
+		{
+			resetPlays();
+		}
+		return pages[column][id >>> PAGE_SHIFT];
+	}
+	
+	/**
+	 * Clears the plays of every ID, unless another thread has already done so
+	 * for the current day.
+	 */
+	private synchronized void resetPlays()
+	{
+		long today = DateUpdater.getInstance().getDay();
+		if (day != today)
+		{
+			for (int[] page : pages[PLAYS])
+			{
+				Arrays.fill(page, 0);
+			}
+			// published after the pages are cleared, so a thread that sees the new
+			// day sees no plays from the last
+			day = today;
+		}
+	}
+}
@@ -1,68 +1,150 @@
 package src.model;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Queue;
-
-import javax.swing.ListModel;
-import javax.swing.event.ListDataEvent;
-import javax.swing.event.ListDataListener;
+import java.util.NoSuchElementException;
 
 /**
- * An adapter that allows a LinkedList<Song> to be read like a List while enforcing
- * that it is only ever modified as a Queue. Has been further adapted to function
- * as a ListModel.
+ * A queue of songs that can be read like a List while enforcing that it is
+ * only ever modified as a Queue. The view shows it in a JList through a
+ * SongQueueListModel.
+ * 
+ * The songs are kept in a circular array that doubles when full, so reading
+ * any element, adding to the back and removing from the front all take
+ * constant time. A JList reads every visible row on each repaint, which made
+ * a long queue kept in a LinkedList slow to draw.
+ * 
+ * Songs may be added and removed from any thread. Changes lock the queue for
+ * a few assignments only, and SongQueueListeners are told of each change
+ * while the queue is still locked.
  * 
  * @author Taylor Heimbichner, Sean Gallagher
  */
-public class ReadableSongQueue implements ListModel<Song>, Serializable
+public class ReadableSongQueue implements Serializable
 {
-	// All of our data, stored as a list
-	private List<Song> list;
+	// size of a saved song: its row in the SongLibrary
+	private static final int QUEUE_RECORD_WIDTH = Integer.BYTES;
+	
+	// initial length of the song array
+	private static final int INITIAL_CAPACITY = 16;
+	
+	// All of our data, the front of the queue at head, wrapping around the end
+	private Song[] songs;
+	
+	// index in songs of the front of the queue
+	private int head;
 	
-	// All of our data, stored as a queue
-	private Queue<Song> queue;
+	// number of songs in the queue
+	private int size;
+	
+	// total length in seconds of the songs in the queue
+	private long seconds;
 	
 	// stores listeners
-	private final ArrayList<ListDataListener> listeners = new ArrayList<ListDataListener>();
+	private final ArrayList<SongQueueListener> listeners = new ArrayList<SongQueueListener>();
+	
+	// true if changes are recorded in the Journal
+	private final boolean journaled;
 	
 	/**
-	 * Creates an empty Queue.
+	 * Creates an empty Queue whose changes are recorded in the Journal.
 	 */
 	public ReadableSongQueue()
 	{
-		LinkedList<Song> linkedList = new LinkedList<Song>();
-		list = linkedList;
-		queue = linkedList;
+		this(true);
+	}
+	
+	/**
+	 * Creates an empty Queue.
+	 * 
+	 * @param journaled true to record changes in the Journal. Only the queue
+	 *            that is saved with the Jukebox should be journaled.
+	 */
+	public ReadableSongQueue(boolean journaled)
+	{
+		this.journaled = journaled;
+		songs = new Song[INITIAL_CAPACITY];
 	}
 	
 	/**
 	 * Adds the song to the collection as a queue
 	 */
-	public void addToQueue(Song song)
+	public synchronized void addToQueue(Song song)
 	{
 		if (song != null)
 		{
-			queue.add(song);
+			if (size == songs.length)
+			{
+				grow();
+			}
+			songs[(head + size) % songs.length] = song;
+			size++;
+			seconds += song.getLength();
+			if (journaled)
+			{
+				Journal.getInstance().logEnqueue(song.getFileName());
+			}
+			songsAdded(1);
 		}
-		notifyListeners();
+	}
+	
+	/**
+	 * Adds the songs to the back of the queue in order, all at once: no other
+	 * change comes between them, and listeners are told of them together.
+	 * 
+	 * @throws IllegalArgumentException If any of the songs is null, in which
+	 *             case none is added.
+	 */
+	public synchronized void addAllToQueue(List<Song> added)
+	{
+		if (added.contains(null))
+		{
+			throw new IllegalArgumentException("Can not queue a null song");
+		}
+		if (added.isEmpty())
+		{
+			return;
+		}
+		while (size + added.size() > songs.length)
+		{
+			grow();
+		}
+		for (Song song : added)
+		{
+			songs[(head + size) % songs.length] = song;
+			size++;
+			seconds += song.getLength();
+			if (journaled)
+			{
+				Journal.getInstance().logEnqueue(song.getFileName());
+			}
+		}
+		songsAdded(added.size());
 	}
 	
 	/**
 	 * Reads a song from the collection as a queue. That is, returns the oldest
 	 * element in the collection. Removes the read element.
 	 */
-	public Song removeFromQueue()
+	public synchronized Song removeFromQueue()
 	{
-		Song ret = queue.remove();
-		notifyListeners();
+		if (size == 0)
+		{
+			throw new NoSuchElementException();
+		}
+		Song ret = songs[head];
+		songs[head] = null;
+		head = (head + 1) % songs.length;
+		size--;
+		seconds -= ret.getLength();
+		if (journaled)
+		{
+			Journal.getInstance().logDequeue();
+		}
+		songRemoved();
 		return ret;
 	}
 	
@@ -70,104 +152,205 @@ public class ReadableSongQueue implements ListModel<Song>, Serializable
 	 * Reads a song from the collection as a queue. That is, returns the oldest
 	 * element in the collection.
 	 */
-	public Song peekAtQueue()
+	public synchronized Song peekAtQueue()
 	{
-		return queue.peek();
+		return size == 0 ? null : songs[head];
 	}
 	
 	/**
 	 * Gets the given element of the Queue.
 	 */
-	public Song getSong(int i)
+	public synchronized Song getSong(int i)
+	{
+		if (i < 0 || i >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+		return songs[(head + i) % songs.length];
+	}
+	
+	/**
+	 * Returns the number of songs in the Queue.
+	 */
+	public synchronized int getSongCount()
+	{
+		return size;
+	}
+	
+	/**
+	 * Returns the total length in seconds of the songs in the Queue, the song
+	 * playing included, which is about how long a song queued now would wait.
+	 */
+	public synchronized long getQueuedSeconds()
+	{
+		return seconds;
+	}
+	
+	/**
+	 * Doubles the length of the song array, moving the front of the queue to
+	 * index 0.
+	 */
+	private void grow()
+	{
+		Song[] grown = new Song[songs.length * 2];
+		int firstPart = Math.min(size, songs.length - head);
+		System.arraycopy(songs, head, grown, 0, firstPart);
+		System.arraycopy(songs, 0, grown, firstPart, size - firstPart);
+		songs = grown;
+		head = 0;
+	}
+	
+	/**
+	 * Adds a listener to be told of every change to the queue.
+	 */
+	public synchronized void addSongQueueListener(SongQueueListener listener)
 	{
-		return list.get(i);
+		listeners.add(listener);
 	}
 	
 	/**
-	 * Notifies listeners whenever a change occurs. This is a simple implementation
-	 * that tells each listener that the entirety of the model has changed whenever
-	 * anything has changed.
+	 * Removes the given listener.
 	 */
-	private void notifyListeners()
+	public synchronized void removeSongQueueListener(SongQueueListener listener)
+	{
+		listeners.remove(listener);
+	}
+	
+	// Tells listeners songs were added to the back of the queue
+	private void songsAdded(int count)
 	{
-		int type = ListDataEvent.CONTENTS_CHANGED;
-		ListDataEvent e = new ListDataEvent(this, type, 0, getSize());
-		for (ListDataListener listener : listeners)
+		for (SongQueueListener listener : listeners)
 		{
-			listener.contentsChanged(e);
+			listener.songsAdded(this, count);
+		}
+	}
+	
+	// Tells listeners the song at the front of the queue was removed
+	private void songRemoved()
+	{
+		for (SongQueueListener listener : listeners)
+		{
+			listener.songRemoved(this);
+		}
+	}
+	
+	// Tells listeners the whole queue was replaced
+	private void songsReplaced()
+	{
+		for (SongQueueListener listener : listeners)
+		{
+			listener.songsReplaced(this);
 		}
 	}
 	
 	/**
-	 * Saves the song queue to a file
+	 * Returns a copy of the songs in the Queue, front first.
 	 */
-	public void saveQueue()
+	public synchronized Song[] getSongs()
 	{
-		try
+		return toArray();
+	}
+	
+	// Copies the songs in the queue, front first
+	private Song[] toArray()
+	{
+		Song[] ret = new Song[size];
+		int firstPart = Math.min(size, songs.length - head);
+		System.arraycopy(songs, head, ret, 0, firstPart);
+		System.arraycopy(songs, 0, ret, firstPart, size - firstPart);
+		return ret;
+	}
+	
+	/**
+	 * Saves the song queue to a file. Songs are saved as their rows in the
+	 * SongLibrary rather than as copies of the songs.
+	 * 
+	 * @return true if the save succeeded.
+	 */
+	public boolean saveQueue()
+	{
+		Song[] saved;
+		long sequence;
+		synchronized (this)
+		{
+			// songs are journaled with the queue locked, so the snapshot holds
+			// exactly the records up to this sequence
+			saved = toArray();
+			sequence = Journal.getInstance().getLastSequence();
+		}
+		try (Snapshot.Writer out = new Snapshot.Writer("queue", Snapshot.QUEUE, sequence))
 		{
-			FileOutputStream bytesToDisk = new FileOutputStream("queue");
-			ObjectOutputStream outFile = new ObjectOutputStream(bytesToDisk);
-			// outFile understands the writeObject(Object o) message.
-			outFile.writeObject(list);
-			outFile.close(); // Always close the output file!
-			bytesToDisk.close();
+			IdentityHashMap<Song, Integer> ids = new IdentityHashMap<Song, Integer>();
+			if (saved.length > 0)
+			{
+				ids = SongLibrary.getInstance().getSongRows();
+			}
+			
+			// songs that have since left the library can not be saved
+			ArrayList<Integer> rows = new ArrayList<Integer>(saved.length);
+			for (Song song : saved)
+			{
+				Integer row = ids.get(song);
+				if (row != null)
+				{
+					rows.add(row);
+				}
+			}
+			
+			out.writeStringTable();
+			out.beginRecords(rows.size(), QUEUE_RECORD_WIDTH);
+			for (int row : rows)
+			{
+				out.putInt(row);
+			}
+			out.commit();
+			Journal.getInstance().setSnapshotSequence(Snapshot.QUEUE, sequence);
+			return true;
 		}
 		catch (IOException ioe)
 		{
 			System.err.println("Writing ReadableSongQueue objects failed");
 			ioe.printStackTrace();
 		}
+		return false;
 	}
 	
 	/**
-	 * Loads the song queue from a file
+	 * Loads the song queue from a file. The SongLibrary must be loaded first.
 	 */
-	@SuppressWarnings("unchecked")
 	public void loadQueue()
 	{
-		try
+		try (Snapshot.Reader in = new Snapshot.Reader("queue", Snapshot.QUEUE))
 		{
-			FileInputStream rawBytes = new FileInputStream("queue");
-			ObjectInputStream inFile = new ObjectInputStream(rawBytes);
-			// Need to cast Objects to the class they are known to be
-			LinkedList<Song> llist = (LinkedList<Song>) inFile.readObject();
-			list = llist;
-			queue = llist;
-			inFile.close();
-			rawBytes.close();
+			SongLibrary library = SongLibrary.getInstance();
+			int count = in.beginRecords(QUEUE_RECORD_WIDTH);
+			Song[] loaded = new Song[Math.max(INITIAL_CAPACITY, count)];
+			long loadedSeconds = 0;
+			for (int i = 0; i < count; i++)
+			{
+				int row = in.getInt();
+				if (row < 0 || row >= library.getRowCount())
+				{
+					throw new IOException("queue refers to a missing song");
+				}
+				loaded[i] = library.getSongAt(row);
+				loadedSeconds += loaded[i].getLength();
+			}
+			in.endRecords();
+			synchronized (this)
+			{
+				songs = loaded;
+				head = 0;
+				size = count;
+				seconds = loadedSeconds;
+				songsReplaced();
+			}
+			Journal.getInstance().setSnapshotSequence(Snapshot.QUEUE, in.getSequence());
 		}
-		catch (Exception e)
+		catch (IOException e)
 		{
 			System.err.println("Reading ReadableSongQueue objects failed");
 			e.printStackTrace();
 		}
 	}
-
-	// Returns the size of the list.
-	@Override
-	public int getSize()
-	{
-		return list.size();
-	}
-
-	// Returns values in the appropriate order
-	@Override
-	public Song getElementAt(int i)
-	{
-		return getSong(i);
-	}
-
-	// Adds the given listener to listeners
-	@Override
-	public void addListDataListener(ListDataListener listener)
-	{
-		listeners.add(listener);
-	}
-
-	// Removes the given listener from listeners
-	@Override
-	public void removeListDataListener(ListDataListener listener)
-	{
-		listeners.remove(listener);
-	}
 }
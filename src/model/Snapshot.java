@@ -0,0 +1,620 @@
+package src.model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Defines the binary format used to save the model. Every snapshot file has
+ * three sections, each followed by a CRC32 of its bytes:
+ * 
+ * <pre>
+ * header:  int magic, int version, int kind, long sequence
+ * strings: int count, int byteLength, count * int offset, UTF-8 bytes
+ * records: int count, int width, then count fixed-width records
+ * </pre>
+ * 
+ * Records refer to strings by their index in the string table, so repeated
+ * strings such as artists are only stored once. The offsets region gives the
+ * position of each string within the UTF-8 bytes, so both strings and records
+ * can be found without reading the whole file, which lets Mapped read a
+ * snapshot in place. The sequence is that of the last Journal record the
+ * snapshot includes, so that only later records are replayed onto it.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class Snapshot
+{
+	// "JBOX"
+	private static final int MAGIC = 0x4A424F58;
+	
+	// bumped whenever the layout of any section or record changes
+	private static final int VERSION = 3;
+	
+	// size of the buffer used to read and write the file channel
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	// size of the header section without and with its checksum
+	private static final int HEADER_DATA_SIZE = 3 * Integer.BYTES + Long.BYTES;
+	private static final int HEADER_SIZE = HEADER_DATA_SIZE + Integer.BYTES;
+	
+	// the kinds of snapshot files
+	public static final int LIBRARY = 1;
+	public static final int ACCOUNTS = 2;
+	public static final int QUEUE = 3;
+	public static final int UPDATE = 4;
+	
+	/**
+	 * Can not be instantiated
+	 */
+	private Snapshot() {}
+	
+	/**
+	 * Writes a snapshot file through a buffered file channel. The data is written
+	 * to a temporary file that only replaces the real one on commit(), so a failed
+	 * save never destroys the previous snapshot.
+	 * 
+	 * Strings must all be interned before writeStringTable() is called, and
+	 * records are written after beginRecords().
+	 */
+	public static class Writer implements AutoCloseable
+	{
+		private final Path path;
+		private final Path tempPath;
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private final CRC32 crc = new CRC32();
+		
+		// the position in buffer from which bytes have not been added to crc
+		private int crcStart = 0;
+		
+		// maps each interned string to its index in the string table
+		private final HashMap<String, Integer> stringIds = new HashMap<String, Integer>();
+		private final ArrayList<String> strings = new ArrayList<String>();
+		
+		/**
+		 * Opens the given file for writing and writes the header.
+		 * 
+		 * @param fileName The snapshot file to replace
+		 * @param kind The kind of snapshot, such as LIBRARY
+		 * @param sequence The sequence of the last Journal record the snapshot includes
+		 */
+		public Writer(String fileName, int kind, long sequence) throws IOException
+		{
+			path = Paths.get(fileName);
+			tempPath = Paths.get(fileName + ".tmp");
+			channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			putInt(MAGIC);
+			putInt(VERSION);
+			putInt(kind);
+			putLong(sequence);
+			endSection();
+		}
+		
+		/**
+		 * Adds a string to the string table if it is not already there.
+		 * 
+		 * @return The index of the string in the string table.
+		 */
+		public int intern(String s)
+		{
+			Integer id = stringIds.get(s);
+			if (id == null)
+			{
+				id = strings.size();
+				stringIds.put(s, id);
+				strings.add(s);
+			}
+			return id;
+		}
+		
+		/**
+		 * Writes every interned string. No strings may be interned afterwards.
+		 */
+		public void writeStringTable() throws IOException
+		{
+			byte[][] bytes = new byte[strings.size()][];
+			int byteLength = 0;
+			for (int i = 0; i < bytes.length; i++)
+			{
+				bytes[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+				byteLength += bytes[i].length;
+			}
+			
+			putInt(bytes.length);
+			putInt(byteLength);
+			int offset = 0;
+			for (byte[] b : bytes)
+			{
+				putInt(offset);
+				offset += b.length;
+			}
+			for (byte[] b : bytes)
+			{
+				putBytes(b);
+			}
+			endSection();
+		}
+		
+		/**
+		 * Starts the record section.
+		 * 
+		 * @param count The number of records that will be written
+		 * @param width The size of each record in bytes
+		 */
+		public void beginRecords(int count, int width) throws IOException
+		{
+			putInt(count);
+			putInt(width);
+		}
+		
+		/**
+		 * Writes an int to the file.
+		 */
+		public void putInt(int value) throws IOException
+		{
+			ensure(Integer.BYTES);
+			buffer.putInt(value);
+		}
+		
+		/**
+		 * Writes a long to the file.
+		 */
+		public void putLong(long value) throws IOException
+		{
+			ensure(Long.BYTES);
+			buffer.putLong(value);
+		}
+		
+		/**
+		 * Writes an array of bytes to the file.
+		 */
+		private void putBytes(byte[] bytes) throws IOException
+		{
+			int offset = 0;
+			while (offset < bytes.length)
+			{
+				ensure(1);
+				int n = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.put(bytes, offset, n);
+				offset += n;
+			}
+		}
+		
+		/**
+		 * Ends the record section, forces the data to disk and moves the file
+		 * into place. Until this is called the previous snapshot is untouched.
+		 */
+		public void commit() throws IOException
+		{
+			endSection();
+			flush();
+			channel.force(true);
+			channel.close();
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		
+		/**
+		 * Discards the temporary file if the snapshot was never committed.
+		 */
+		@Override
+		public void close() throws IOException
+		{
+			if (channel.isOpen())
+			{
+				channel.close();
+				Files.deleteIfExists(tempPath);
+			}
+		}
+		
+		/**
+		 * Writes the checksum of the current section and starts a new one.
+		 */
+		private void endSection() throws IOException
+		{
+			ensure(Integer.BYTES);
+			crc.update(buffer.array(), crcStart, buffer.position() - crcStart);
+			buffer.putInt((int) crc.getValue());
+			crc.reset();
+			crcStart = buffer.position();
+		}
+		
+		/**
+		 * Makes room for n bytes in the buffer, flushing it if necessary.
+		 */
+		private void ensure(int n) throws IOException
+		{
+			if (buffer.remaining() < n)
+			{
+				flush();
+			}
+		}
+		
+		/**
+		 * Writes the buffer to the channel.
+		 */
+		private void flush() throws IOException
+		{
+			crc.update(buffer.array(), crcStart, buffer.position() - crcStart);
+			buffer.flip();
+			while (buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+			buffer.clear();
+			crcStart = 0;
+		}
+	}
+	
+	/**
+	 * Reads a snapshot file through a buffered file channel, verifying the
+	 * checksum of each section. The header and string table are read when the
+	 * reader is opened.
+	 */
+	public static class Reader implements AutoCloseable
+	{
+		private final String fileName;
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private final CRC32 crc = new CRC32();
+		
+		// the position in buffer from which bytes have not been added to crc
+		private int crcStart = 0;
+		
+		// the string table
+		private String[] strings;
+		
+		// the sequence of the last Journal record the snapshot includes
+		private long sequence;
+		
+		/**
+		 * Opens the given file, checking that it is a snapshot of the given kind,
+		 * and reads its string table.
+		 * 
+		 * @param fileName The snapshot file to read
+		 * @param kind The expected kind of snapshot, such as LIBRARY
+		 */
+		public Reader(String fileName, int kind) throws IOException
+		{
+			this.fileName = fileName;
+			channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+			buffer.flip();
+			try
+			{
+				if (getInt() != MAGIC)
+				{
+					throw new IOException(fileName + " is not a jukebox snapshot");
+				}
+				int version = getInt();
+				if (version != VERSION)
+				{
+					throw new IOException(fileName + " has unsupported version " + version);
+				}
+				if (getInt() != kind)
+				{
+					throw new IOException(fileName + " is the wrong kind of snapshot");
+				}
+				sequence = getLong();
+				checkSection();
+				readStringTable();
+			}
+			catch (IOException e)
+			{
+				channel.close();
+				throw e;
+			}
+		}
+		
+		/**
+		 * Returns the sequence of the last Journal record the snapshot includes.
+		 */
+		public long getSequence()
+		{
+			return sequence;
+		}
+		
+		/**
+		 * Returns the string at the given index of the string table.
+		 */
+		public String getString(int id) throws IOException
+		{
+			if (id < 0 || id >= strings.length)
+			{
+				throw new IOException(fileName + " refers to a missing string");
+			}
+			return strings[id];
+		}
+		
+		/**
+		 * Starts the record section.
+		 * 
+		 * @param width The expected size of each record in bytes
+		 * @return The number of records in the file.
+		 */
+		public int beginRecords(int width) throws IOException
+		{
+			int count = getInt();
+			if (getInt() != width)
+			{
+				throw new IOException(fileName + " has records of the wrong size");
+			}
+			return count;
+		}
+		
+		/**
+		 * Reads an int from the file.
+		 */
+		public int getInt() throws IOException
+		{
+			ensure(Integer.BYTES);
+			return buffer.getInt();
+		}
+		
+		/**
+		 * Reads a long from the file.
+		 */
+		public long getLong() throws IOException
+		{
+			ensure(Long.BYTES);
+			return buffer.getLong();
+		}
+		
+		/**
+		 * Verifies the checksum of the record section. Should be called after
+		 * the last record is read and before any of the records are used.
+		 */
+		public void endRecords() throws IOException
+		{
+			checkSection();
+		}
+		
+		/**
+		 * Closes the file.
+		 */
+		@Override
+		public void close() throws IOException
+		{
+			channel.close();
+		}
+		
+		/**
+		 * Reads every string in the string table.
+		 */
+		private void readStringTable() throws IOException
+		{
+			strings = new String[getInt()];
+			byte[] bytes = new byte[getInt()];
+			int[] offsets = new int[strings.length + 1];
+			for (int i = 0; i < strings.length; i++)
+			{
+				offsets[i] = getInt();
+			}
+			offsets[strings.length] = bytes.length;
+			
+			int offset = 0;
+			while (offset < bytes.length)
+			{
+				ensure(1);
+				int n = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.get(bytes, offset, n);
+				offset += n;
+			}
+			for (int i = 0; i < strings.length; i++)
+			{
+				if (offsets[i] < 0 || offsets[i] > offsets[i + 1])
+				{
+					throw new IOException(fileName + " is corrupt");
+				}
+				int length = offsets[i + 1] - offsets[i];
+				strings[i] = new String(bytes, offsets[i], length, StandardCharsets.UTF_8);
+			}
+			checkSection();
+		}
+		
+		/**
+		 * Reads the checksum of the current section, throwing an exception if it
+		 * does not match the section's bytes, and starts a new section.
+		 */
+		private void checkSection() throws IOException
+		{
+			ensure(Integer.BYTES);
+			crc.update(buffer.array(), crcStart, buffer.position() - crcStart);
+			int expected = (int) crc.getValue();
+			if (buffer.getInt() != expected)
+			{
+				throw new IOException(fileName + " is corrupt");
+			}
+			crc.reset();
+			crcStart = buffer.position();
+		}
+		
+		/**
+		 * Makes sure at least n bytes are available in the buffer, reading more
+		 * from the channel if necessary.
+		 */
+		private void ensure(int n) throws IOException
+		{
+			if (buffer.remaining() >= n)
+			{
+				return;
+			}
+			crc.update(buffer.array(), crcStart, buffer.position() - crcStart);
+			buffer.compact();
+			crcStart = 0;
+			while (buffer.position() < n)
+			{
+				if (channel.read(buffer) == -1)
+				{
+					throw new EOFException(fileName + " ended unexpectedly");
+				}
+			}
+			buffer.flip();
+		}
+	}
+	
+	/**
+	 * Reads a snapshot file in place by mapping it into memory. Opening the file
+	 * only reads the header and a few counts, so it takes the same time no matter
+	 * how many records the file holds, and records and strings are only decoded
+	 * when asked for. Because of this the section checksums are not verified.
+	 * 
+	 * Only absolute reads are made on the mapped buffer, so a Mapped may be read
+	 * from many threads at once.
+	 */
+	public static class Mapped
+	{
+		private final String fileName;
+		private final MappedByteBuffer buffer;
+		
+		// the number of strings and the positions of their offsets and bytes
+		private final int stringCount;
+		private final int offsetsStart;
+		private final int bytesStart;
+		private final int bytesLength;
+		
+		// the number of records, their size and the position of the first one
+		private final int recordCount;
+		private final int recordWidth;
+		private final int recordsStart;
+		
+		/**
+		 * Maps the given file, checking that it is a snapshot of the given kind
+		 * with records of the given size.
+		 * 
+		 * @param fileName The snapshot file to read
+		 * @param kind The expected kind of snapshot, such as LIBRARY
+		 * @param width The expected size of each record in bytes
+		 */
+		public Mapped(String fileName, int kind, int width) throws IOException
+		{
+			this.fileName = fileName;
+			try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+			{
+				// the mapping stays valid after the channel is closed
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			{
+				throw new IOException(fileName + " is not a jukebox snapshot");
+			}
+			int version = buffer.getInt(Integer.BYTES);
+			if (version != VERSION)
+			{
+				throw new IOException(fileName + " has unsupported version " + version);
+			}
+			if (buffer.getInt(2 * Integer.BYTES) != kind)
+			{
+				throw new IOException(fileName + " is the wrong kind of snapshot");
+			}
+			CRC32 crc = new CRC32();
+			crc.update(buffer.duplicate().limit(HEADER_DATA_SIZE));
+			if (buffer.getInt(HEADER_DATA_SIZE) != (int) crc.getValue())
+			{
+				throw new IOException(fileName + " is corrupt");
+			}
+			
+			try
+			{
+				stringCount = buffer.getInt(HEADER_SIZE);
+				bytesLength = buffer.getInt(HEADER_SIZE + Integer.BYTES);
+				offsetsStart = HEADER_SIZE + 2 * Integer.BYTES;
+				bytesStart = Math.addExact(offsetsStart, Math.multiplyExact(stringCount, Integer.BYTES));
+				
+				// skip the bytes and the strings checksum
+				int recordsHeader = Math.addExact(bytesStart, bytesLength) + Integer.BYTES;
+				recordCount = buffer.getInt(recordsHeader);
+				recordWidth = buffer.getInt(recordsHeader + Integer.BYTES);
+				recordsStart = recordsHeader + 2 * Integer.BYTES;
+				long recordsEnd = recordsStart + (long) recordCount * recordWidth;
+				if (stringCount < 0 || bytesLength < 0 || recordCount < 0
+						|| recordsEnd + Integer.BYTES != buffer.limit())
+				{
+					throw new IOException(fileName + " is corrupt");
+				}
+			}
+			catch (IndexOutOfBoundsException | ArithmeticException e)
+			{
+				throw new IOException(fileName + " is corrupt", e);
+			}
+			if (recordWidth != width)
+			{
+				throw new IOException(fileName + " has records of the wrong size");
+			}
+		}
+		
+		/**
+		 * Returns the sequence of the last Journal record the snapshot includes.
+		 */
+		public long getSequence()
+		{
+			return buffer.getLong(3 * Integer.BYTES);
+		}
+		
+		/**
+		 * Returns the number of records in the file.
+		 */
+		public int getRecordCount()
+		{
+			return recordCount;
+		}
+		
+		/**
+		 * Reads an int from a record.
+		 * 
+		 * @param record The index of the record
+		 * @param field The position of the int within the record, in bytes
+		 */
+		public int getInt(int record, int field)
+		{
+			return buffer.getInt(recordsStart + record * recordWidth + field);
+		}
+		
+		/**
+		 * Reads a long from a record.
+		 * 
+		 * @param record The index of the record
+		 * @param field The position of the long within the record, in bytes
+		 */
+		public long getLong(int record, int field)
+		{
+			return buffer.getLong(recordsStart + record * recordWidth + field);
+		}
+		
+		/**
+		 * Decodes the string at the given index of the string table.
+		 */
+		public String getString(int id) throws IOException
+		{
+			if (id < 0 || id >= stringCount)
+			{
+				throw new IOException(fileName + " refers to a missing string");
+			}
+			int start = buffer.getInt(offsetsStart + id * Integer.BYTES);
+			int end = bytesLength;
+			if (id + 1 < stringCount)
+			{
+				end = buffer.getInt(offsetsStart + (id + 1) * Integer.BYTES);
+			}
+			if (start < 0 || start > end || end > bytesLength)
+			{
+				throw new IOException(fileName + " is corrupt");
+			}
+			byte[] bytes = new byte[end - start];
+			buffer.get(bytesStart + start, bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package src.model;
+
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts the library, accounts, queue and update files written by the old
+ * ObjectOutputStream based saves into snapshot files. Run it once from the
+ * directory holding the files; the old files are overwritten.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class SnapshotMigrator
+{
+	public static void main(String[] args) throws Exception
+	{
+		// the day must be restored first, old songs and accounts count plays on it
+		LocalDate lastUpdate = (LocalDate) readObject("update");
+		DateUpdater.getInstance().restoreDay(lastUpdate.toEpochDay());
+		
+		SongLibrary library = SongLibrary.getInstance();
+		library.replaceSongs(readList("library", Song.class));
+		
+		JukeboxAccountCollection.getInstance().replaceAccounts(readList("accounts", JukeboxAccount.class));
+		
+		// old queues hold copies of songs, so find the library's song with each name
+		Jukebox juke = new Jukebox();
+		for (Song copy : readList("queue", Song.class))
+		{
+			Song song = library.getSong(copy.getName());
+			if (song == null)
+			{
+				System.err.println("Dropping " + copy.getName() + " from the queue, it is not in the library");
+				continue;
+			}
+			juke.getSongQueue().addToQueue(song);
+		}
+		
+		juke.save();
+	}
+	
+	/**
+	 * Reads a list of the given type from an old save.
+	 */
+	private static <T> List<T> readList(String fileName, Class<T> type) throws Exception
+	{
+		List<?> list = (List<?>) readObject(fileName);
+		List<T> ret = new ArrayList<T>(list.size());
+		for (Object o : list)
+		{
+			ret.add(type.cast(o));
+		}
+		return ret;
+	}
+	
+	/**
+	 * Reads the single object in an old save.
+	 */
+	private static Object readObject(String fileName) throws Exception
+	{
+		try (ObjectInputStream inFile = new ObjectInputStream(new FileInputStream(fileName)))
+		{
+			return inFile.readObject();
+		}
+	}
+}
@@ -1,39 +1,60 @@
 package src.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.util.Observable;
-import java.util.Observer;
 
 /**
- * Stores all data pertaining to a single song. Implements observer in order to
- * allow DateUpdater to notify this song at midnight and reset timesPlayed.
+ * Stores all data pertaining to a single song. The number of times each song
+ * has been played today is not kept by the song but in a column of PlayCounters
+ * shared by every song, so the plays of all songs reset together once
+ * DateUpdater reaches a new day, and a song's own fields are never changed once
+ * it is built.
  * 
  * @author Taylor Heimbichner
  */
-public class Song implements Observer, Serializable
+public class Song implements Serializable
 {
+	// matches the saves written before Song stopped being an Observer
+	private static final long serialVersionUID = -1617669514361111428L;
+	
+	// the fields of a saved song, which still include its plays
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("name", String.class),
+		new ObjectStreamField("artist", String.class),
+		new ObjectStreamField("fileName", String.class),
+		new ObjectStreamField("length", int.class),
+		new ObjectStreamField("timesPlayed", int.class),
+		new ObjectStreamField("day", long.class)
+	};
+	
+	// the plays of every song today, by ID
+	private static final PlayCounters counters = new PlayCounters(1);
+	
 	// max number of times a song can be played in a day
-	private static final int MAX_PLAYS = 3;
+	static final int MAX_PLAYS = 3;
 	
 	// a string representing the directory in which the songfiles are contained
-	private static final String BASE_DIR = System.getProperty("user.dir") +
+	static final String BASE_DIR = System.getProperty("user.dir") +
 			System.getProperty("file.separator") + "songfiles" +
 			System.getProperty("file.separator");
 	
-	// the song's name
-	private final String name;
+	// the song's name, only set when the song is built or read
+	private String name;
 	
 	// the song's artist
-	private final String artist;
-		
+	private String artist;
+	
 	// the name of the song file
-	private final String fileName;
+	private String fileName;
 	
 	// song length in seconds
-	private final int length;
+	private int length;
 	
-	// number of times played today
-	private int timesPlayed;
+	// the index of the song's plays in counters
+	private transient int id;
 	
 	/**
 	 * Constructs a song with the given information
@@ -44,7 +65,21 @@ public class Song implements Observer, Serializable
 		this.fileName = fileName;
 		this.length = length;
 		this.artist = artist;
-		timesPlayed = 0;
+		id = counters.newId();
+	}
+	
+	/**
+	 * Constructs a song with the given information and play count, as read from
+	 * a saved library.
+	 */
+	Song(String name, String fileName, int length, String artist, int timesPlayed, long day)
+	{
+		this.name = name;
+		this.fileName = fileName;
+		this.length = length;
+		this.artist = artist;
+		id = counters.newId();
+		counters.restorePlays(id, timesPlayed, day);
 	}
 	
 	/**
@@ -71,6 +106,14 @@ public class Song implements Observer, Serializable
 		return BASE_DIR + fileName;
 	}
 	
+	/**
+	 * Returns the name of the song file relative to the songfiles directory
+	 */
+	String getShortFileName()
+	{
+		return fileName;
+	}
+	
 	/**
 	 * Returns the length of this song
 	 */
@@ -87,7 +130,7 @@ public class Song implements Observer, Serializable
 	 */
 	public int getTimesPlayed()
 	{
-		return timesPlayed;
+		return counters.get(PlayCounters.PLAYS, id);
 	}
 	
 	/**
@@ -99,7 +142,7 @@ public class Song implements Observer, Serializable
 	 */
 	public boolean canPlay()
 	{
-		return timesPlayed < MAX_PLAYS;
+		return getTimesPlayed() < MAX_PLAYS;
 	}
 	
 	/**
@@ -107,14 +150,76 @@ public class Song implements Observer, Serializable
 	 */
 	public void playSong()
 	{
-		timesPlayed++;
+		Journal journal = Journal.getInstance();
+		long change = journal.beginChange();
+		try
+		{
+			counters.add(PlayCounters.PLAYS, id, 1);
+			journal.logSongPlay(getFileName());
+		}
+		finally
+		{
+			journal.endChange(change);
+		}
 	}
-
-	// Update the timesPlayed variable, resetting it to 0 every midnight.
-	@Override
-	public void update(Observable o, Object arg)
+	
+	/**
+	 * Takes one of the song's plays today if it has any left, in one step with
+	 * the check, but does not record the play in the journal.
+	 * 
+	 * @return true if the play was taken.
+	 */
+	boolean reservePlay()
+	{
+		return counters.addIfAtMost(PlayCounters.PLAYS, id, 1, MAX_PLAYS);
+	}
+	
+	/**
+	 * Gives back a play taken by reservePlay(), unless the plays have been reset
+	 * at midnight since.
+	 */
+	void releasePlay()
+	{
+		counters.subtractIfAtLeast(PlayCounters.PLAYS, id, 1);
+	}
+	
+	/**
+	 * Records a play taken by reservePlay() in the journal.
+	 */
+	void confirmPlay()
+	{
+		Journal.getInstance().logSongPlay(getFileName());
+	}
+	
+	// Reads a song saved with its plays, and moves the plays into counters.
+	// Saves written before the day field existed count plays for the current day.
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream.GetField fields = in.readFields();
+		name = (String) fields.get("name", null);
+		artist = (String) fields.get("artist", null);
+		fileName = (String) fields.get("fileName", null);
+		length = fields.get("length", 0);
+		long day = fields.get("day", 0L);
+		if (day == 0)
+		{
+			day = DateUpdater.getInstance().getDay();
+		}
+		id = counters.newId();
+		counters.restorePlays(id, fields.get("timesPlayed", 0), day);
+	}
+	
+	// Saves a song as it was saved when it kept its own plays
+	private void writeObject(ObjectOutputStream out) throws IOException
 	{
-		timesPlayed = 0;
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("name", name);
+		fields.put("artist", artist);
+		fields.put("fileName", fileName);
+		fields.put("length", length);
+		fields.put("timesPlayed", getTimesPlayed());
+		fields.put("day", DateUpdater.getInstance().getDay());
+		out.writeFields();
 	}
 	
 	// Gives the length, title, and artist
@@ -1,25 +1,85 @@
 package src.model;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import javax.swing.event.TableModelListener;
-import javax.swing.table.TableModel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 /**
- * Stores a hard-coded list of Songs and allows access to them.
+ * Stores a hard-coded list of Songs and allows access to them. A loaded library
+ * is read in place from the memory-mapped library file, and Songs are only built
+ * from it when asked for, so loading takes the same time and memory no matter
+ * how many songs there are. The first change to a loaded library copies it into
+ * an ordinary list.
+ * 
+ * The hard-coded songs can be replaced with the songs actually in the songfiles
+ * directory with scanSongs().
+ * 
+ * Songs can be found by name or artist as a user would type them with
+ * search(), which reads a SongSearchIndex kept with the other indices.
+ * 
+ * Songs may also be added and removed while the library is in use, and each
+ * SongLibraryListener is told exactly which rows changed.
+ * 
+ * The library does not depend on Swing. The view shows it in a JTable through
+ * a SongLibraryTableModel.
+ * 
+ * Every public method locks the library, so it may be used from any thread.
  * 
  * @author Taylor Heimbichner, Sean Gallagher
  */
-public class SongLibrary implements Serializable, TableModel 
+public class SongLibrary implements Serializable
 {
-	// the list of songs
+	// the columns of getValueAt()
+	public static final int ARTIST_COLUMN = 0;
+	public static final int NAME_COLUMN = 1;
+	public static final int LENGTH_COLUMN = 2;
+	
+	// the list of songs, null while the library is read from mapped
 	private ArrayList<Song> songs;
 	
+	// the mapped library file, null unless the library was loaded and not changed since
+	private Snapshot.Mapped mapped;
+	
+	// songs built from mapped so far, by row
+	private Song[] mappedSongs;
+	
+	// true when the indices hold every song
+	private boolean indexed;
+	
+	// songs indexed by name, the first song added with a name wins
+	private final HashMap<String, Song> songsByName = new HashMap<String, Song>();
+	
+	// songs indexed by artist
+	private final HashMap<String, List<Song>> songsByArtist = new HashMap<String, List<Song>>();
+	
+	// songs indexed by fully qualified file name
+	private final HashMap<String, List<Song>> songsByFile = new HashMap<String, List<Song>>();
+	
+	// songs indexed by the words of their names and artists
+	private final SongSearchIndex searchIndex = new SongSearchIndex();
+	
+	// stores listeners
+	private final ArrayList<SongLibraryListener> listeners = new ArrayList<SongLibraryListener>();
+	
+	// size of a saved song: name, artist, file name, length, times played, day
+	private static final int SONG_RECORD_WIDTH = 5 * Integer.BYTES + Long.BYTES;
+	
+	// positions of each field within a saved song
+	private static final int NAME_FIELD = 0;
+	private static final int ARTIST_FIELD = Integer.BYTES;
+	private static final int FILE_FIELD = 2 * Integer.BYTES;
+	private static final int LENGTH_FIELD = 3 * Integer.BYTES;
+	private static final int PLAYS_FIELD = 4 * Integer.BYTES;
+	private static final int DAY_FIELD = 5 * Integer.BYTES;
+	
 	// the single instance of this library
 	private static final SongLibrary instance = new SongLibrary();
 	
@@ -29,6 +89,7 @@ public class SongLibrary implements Serializable, TableModel
 	private SongLibrary()
 	{
 		songs = new ArrayList<Song>();
+		indexed = true;
 		populateSongList();
 	}
 	
@@ -67,51 +128,386 @@ public class SongLibrary implements Serializable, TableModel
 	{
 		// add a song and register it with dateUpdater
 		Song song = new Song(name, fileName, length, artist);
+		ensureIndexed();
+		ensureSongList();
 		songs.add(song);
-		DateUpdater.getInstance().addObserver(song);
+		indexSong(song);
+	}
+	
+	/**
+	 * Removes the song with the given name from the library.
+	 * 
+	 * @param name The name of the song to remove
+	 * @return The removed song, or null if no song has that name.
+	 */
+	public synchronized Song removeSong(String name)
+	{
+		ensureIndexed();
+		Song song = songsByName.get(name);
+		if (song != null)
+		{
+			removeSongs(Collections.singletonList(song));
+		}
+		return song;
+	}
+	
+	/**
+	 * Adds each of the given songs whose file is not in the library yet to the
+	 * end of the library.
+	 */
+	public synchronized void addSongs(List<Song> newSongs)
+	{
+		ensureIndexed();
+		ensureSongList();
+		int first = songs.size();
+		for (Song song : newSongs)
+		{
+			if (!songsByFile.containsKey(song.getFileName()))
+			{
+				songs.add(song);
+				indexSong(song);
+			}
+		}
+		if (songs.size() > first)
+		{
+			songsAdded(first, songs.size() - 1);
+		}
+	}
+	
+	/**
+	 * Removes each of the given songs that is in the library. Songs are compared
+	 * by identity.
+	 */
+	public synchronized void removeSongs(Collection<Song> oldSongs)
+	{
+		Set<Song> removing = Collections.newSetFromMap(new IdentityHashMap<Song, Boolean>());
+		removing.addAll(oldSongs);
+		ensureIndexed();
+		ensureSongList();
+		
+		// each run of removed rows is removed from the back, so the rows given to
+		// listeners are still the rows they know
+		HashSet<String> names = new HashSet<String>();
+		HashSet<String> artists = new HashSet<String>();
+		HashSet<String> files = new HashSet<String>();
+		int row = songs.size() - 1;
+		while (row >= 0)
+		{
+			int last = row;
+			while (row >= 0 && removing.contains(songs.get(row)))
+			{
+				Song song = songs.get(row);
+				if (songsByName.get(song.getName()) == song)
+				{
+					songsByName.remove(song.getName());
+					names.add(song.getName());
+				}
+				artists.add(song.getArtist());
+				files.add(song.getFileName());
+				searchIndex.remove(song);
+				row--;
+			}
+			if (row < last)
+			{
+				songs.subList(row + 1, last + 1).clear();
+				songsRemoved(row + 1, last);
+			}
+			else
+			{
+				row--;
+			}
+		}
+		
+		// each bucket of the secondary indices is filtered once
+		for (String artist : artists)
+		{
+			unindex(songsByArtist, artist, removing);
+		}
+		for (String file : files)
+		{
+			unindex(songsByFile, file, removing);
+		}
+		
+		// other songs may share the removed songs' names
+		for (int i = 0; i < songs.size() && !names.isEmpty(); i++)
+		{
+			String name = songs.get(i).getName();
+			if (names.remove(name))
+			{
+				songsByName.put(name, songs.get(i));
+			}
+		}
+	}
+	
+	/**
+	 * Adds a listener to be told of every change to the library.
+	 */
+	public synchronized void addSongLibraryListener(SongLibraryListener listener)
+	{
+		listeners.add(listener);
+	}
+	
+	/**
+	 * Removes the given listener.
+	 */
+	public synchronized void removeSongLibraryListener(SongLibraryListener listener)
+	{
+		listeners.remove(listener);
+	}
+	
+	// Tells listeners songs were added at the given rows
+	private void songsAdded(int firstRow, int lastRow)
+	{
+		for (SongLibraryListener listener : listeners)
+		{
+			listener.songsAdded(this, firstRow, lastRow);
+		}
+	}
+	
+	// Tells listeners the songs at the given rows were removed
+	private void songsRemoved(int firstRow, int lastRow)
+	{
+		for (SongLibraryListener listener : listeners)
+		{
+			listener.songsRemoved(this, firstRow, lastRow);
+		}
+	}
+	
+	// Tells listeners every song was replaced
+	private void songsReplaced()
+	{
+		for (SongLibraryListener listener : listeners)
+		{
+			listener.songsReplaced(this);
+		}
+	}
+	
+	/**
+	 * Adds the given song to each of the indices.
+	 */
+	private void indexSong(Song song)
+	{
+		songsByName.putIfAbsent(song.getName(), song);
+		songsByArtist.computeIfAbsent(song.getArtist(), k -> new ArrayList<Song>()).add(song);
+		songsByFile.computeIfAbsent(song.getFileName(), k -> new ArrayList<Song>()).add(song);
+		searchIndex.add(song);
+	}
+	
+	/**
+	 * Removes the given songs from the given key of a secondary index.
+	 */
+	private static void unindex(HashMap<String, List<Song>> index, String key, Set<Song> removing)
+	{
+		List<Song> bucket = index.get(key);
+		if (bucket != null)
+		{
+			bucket.removeIf(removing::contains);
+			if (bucket.isEmpty())
+			{
+				index.remove(key);
+			}
+		}
+	}
+	
+	/**
+	 * Clears and rebuilds every index from the songs in the library.
+	 */
+	private void rebuildIndices()
+	{
+		songsByName.clear();
+		songsByArtist.clear();
+		songsByFile.clear();
+		searchIndex.clear();
+		for (int i = 0; i < getRowCount(); i++)
+		{
+			indexSong(getSongAt(i));
+		}
+		indexed = true;
+	}
+	
+	/**
+	 * Builds the indices if the library was loaded since they were last built.
+	 */
+	private void ensureIndexed()
+	{
+		if (!indexed)
+		{
+			rebuildIndices();
+		}
+	}
+	
+	/**
+	 * Copies a mapped library into the list of songs so that it can be changed.
+	 */
+	private void ensureSongList()
+	{
+		if (songs == null)
+		{
+			ArrayList<Song> list = new ArrayList<Song>(getRowCount());
+			for (int i = 0; i < getRowCount(); i++)
+			{
+				list.add(getSongAt(i));
+			}
+			songs = list;
+			mapped = null;
+			mappedSongs = null;
+		}
+	}
+	
+	/**
+	 * Replaces every song in the library with the given songs.
+	 */
+	synchronized void replaceSongs(List<Song> newSongs)
+	{
+		songs = new ArrayList<Song>(newSongs);
+		mapped = null;
+		mappedSongs = null;
+		rebuildIndices();
+		songsReplaced();
+	}
+	
+	/**
+	 * Replaces every song in the library with the songs the scanner finds. The
+	 * files are scanned before the library is locked. A song found in the same
+	 * file with the same name, artist and length as a song already in the
+	 * library is kept as it is, with its plays today.
+	 * 
+	 * @return The number of songs in the library.
+	 * @throws IOException If the scanner could not list a directory.
+	 */
+	public int scanSongs(SongScanner scanner) throws IOException
+	{
+		List<Song> found = scanner.scan();
+		synchronized (this)
+		{
+			ensureIndexed();
+			ArrayList<Song> merged = new ArrayList<Song>(found.size());
+			for (Song song : found)
+			{
+				Song kept = song;
+				for (Song old : lookup(songsByFile, song.getFileName()))
+				{
+					if (old.getName().equals(song.getName()) && old.getArtist().equals(song.getArtist())
+							&& old.getLength() == song.getLength())
+					{
+						kept = old;
+						break;
+					}
+				}
+				merged.add(kept);
+			}
+			replaceSongs(merged);
+			return merged.size();
+		}
+	}
+	
+	/**
+	 * Maps each song that has been handed out by this library to its row. Songs
+	 * that have not yet been built from the mapped library file are left out.
+	 */
+	synchronized IdentityHashMap<Song, Integer> getSongRows()
+	{
+		IdentityHashMap<Song, Integer> rows = new IdentityHashMap<Song, Integer>();
+		for (int i = 0; i < getRowCount(); i++)
+		{
+			Song song = (songs != null) ? songs.get(i) : mappedSongs[i];
+			if (song != null)
+			{
+				rows.put(song, i);
+			}
+		}
+		return rows;
 	}
 	
 	/**
 	 * Saves the song library to a file
+	 * 
+	 * @return true if the save succeeded.
 	 */
-	public void saveLibrary()
+	public synchronized boolean saveLibrary()
 	{
+		int count = getRowCount();
+		Song[] saved = new Song[count];
+		for (int i = 0; i < count; i++)
+		{
+			saved[i] = getSongAt(i);
+		}
+		
+		// the plays are read with no play half made, together with the sequence
+		// of the last record they include, and times played are saved as
+		// counted on the current day
+		Journal journal = Journal.getInstance();
+		int[] plays = new int[count];
+		long sequence;
+		long day;
+		long capture = journal.beginCapture();
 		try
 		{
-			FileOutputStream bytesToDisk = new FileOutputStream("library");
-			ObjectOutputStream outFile = new ObjectOutputStream(bytesToDisk);
-			// outFile understands the writeObject(Object o) message.
-			outFile.writeObject(songs);
-			outFile.close(); // Always close the output file!
-			bytesToDisk.close();
+			sequence = journal.getLastSequence();
+			day = DateUpdater.getInstance().getDay();
+			for (int i = 0; i < count; i++)
+			{
+				plays[i] = saved[i].getTimesPlayed();
+			}
+		}
+		finally
+		{
+			journal.endCapture(capture);
+		}
+		
+		try (Snapshot.Writer out = new Snapshot.Writer("library", Snapshot.LIBRARY, sequence))
+		{
+			for (Song song : saved)
+			{
+				out.intern(song.getName());
+				out.intern(song.getArtist());
+				out.intern(song.getShortFileName());
+			}
+			out.writeStringTable();
+			
+			out.beginRecords(count, SONG_RECORD_WIDTH);
+			for (int i = 0; i < count; i++)
+			{
+				Song song = saved[i];
+				out.putInt(out.intern(song.getName()));
+				out.putInt(out.intern(song.getArtist()));
+				out.putInt(out.intern(song.getShortFileName()));
+				out.putInt(song.getLength());
+				out.putInt(plays[i]);
+				out.putLong(day);
+			}
+			out.commit();
+			journal.setSnapshotSequence(Snapshot.LIBRARY, sequence);
+			return true;
 		}
 		catch (IOException ioe)
 		{
 			System.err.println("Writing SongLibrary objects failed");
 			ioe.printStackTrace();
 		}
+		return false;
 	}
 	
 	/**
-	 * Loads the song library from a file
+	 * Loads the song library from a file. The file is mapped rather than read,
+	 * so no songs are built until they are asked for.
 	 */
-	@SuppressWarnings("unchecked")
-	public void loadLibrary()
+	public synchronized void loadLibrary()
 	{
 		try
 		{
-			FileInputStream rawBytes = new FileInputStream("library");
-			ObjectInputStream inFile = new ObjectInputStream(rawBytes);
-			// Need to cast Objects to the class they are known to be
-			this.songs = (ArrayList<Song>) inFile.readObject();
-			for (Song song : songs)
-			{
-				DateUpdater.getInstance().addObserver(song);
-			}
-			inFile.close();
-			rawBytes.close();
+			mapped = new Snapshot.Mapped("library", Snapshot.LIBRARY, SONG_RECORD_WIDTH);
+			mappedSongs = new Song[mapped.getRecordCount()];
+			songs = null;
+			songsByName.clear();
+			songsByArtist.clear();
+			songsByFile.clear();
+			searchIndex.clear();
+			indexed = false;
+			Journal.getInstance().setSnapshotSequence(Snapshot.LIBRARY, mapped.getSequence());
+			songsReplaced();
 		}
-		catch (Exception e)
+		catch (IOException e)
 		{
 			System.err.println("Reading SongLibrary objects failed");
 			e.printStackTrace();
@@ -119,95 +515,179 @@ public class SongLibrary implements Serializable, TableModel
 	}
 	
 	/**
-	 * Returns a song with the given name from this SongLibrary.
+	 * Returns the song in the given row of the library.
 	 * 
-	 * @param name The name of the desired song.
-	 * @return A song named with the specified name.
+	 * @param row The index of the song, from 0 to getRowCount() - 1.
 	 */
-	public Song getSong(String name)
+	public synchronized Song getSongAt(int row)
 	{
-		for (Song s : songs)
+		if (songs != null)
 		{
-			if (s.getName().equals(name))
-			{
-				return s;
-			}
+			return songs.get(row);
 		}
-		return null;
+		Song song = mappedSongs[row];
+		if (song == null)
+		{
+			String name = readString(row, NAME_FIELD);
+			String artist = readString(row, ARTIST_FIELD);
+			String fileName = readString(row, FILE_FIELD);
+			int length = mapped.getInt(row, LENGTH_FIELD);
+			int timesPlayed = mapped.getInt(row, PLAYS_FIELD);
+			long day = mapped.getLong(row, DAY_FIELD);
+			song = new Song(name, fileName, length, artist, timesPlayed, day);
+			mappedSongs[row] = song;
+		}
+		return song;
 	}
 	
-	// Returns the type for each column
-	@Override
-	public Class<?> getColumnClass(int index)
+	/**
+	 * Reads one of the string fields of a song in the mapped library file.
+	 */
+	private String readString(int row, int field)
 	{
-		if (index <= 1)
+		try
+		{
+			return mapped.getString(mapped.getInt(row, field));
+		}
+		catch (IOException e)
 		{
-			return String.class;
+			throw new UncheckedIOException(e);
 		}
-		return Integer.class;
 	}
 	
-	// 3 columns: Artist, Title, Length
-	@Override
-	public int getColumnCount()
+	/**
+	 * Returns a song with the given name from this SongLibrary.
+	 * 
+	 * @param name The name of the desired song.
+	 * @return A song named with the specified name.
+	 */
+	public synchronized Song getSong(String name)
+	{
+		ensureIndexed();
+		return songsByName.get(name);
+	}
+	
+	/**
+	 * Returns every song by the given artist.
+	 * 
+	 * @param artist The artist of the desired songs.
+	 * @return An unmodifiable list of the artist's songs, empty if there are none.
+	 */
+	public synchronized List<Song> getSongsByArtist(String artist)
+	{
+		ensureIndexed();
+		return lookup(songsByArtist, artist);
+	}
+	
+	/**
+	 * Returns every song stored in the given file.
+	 * 
+	 * @param fileName The fully qualified file name, as given by Song.getFileName().
+	 * @return An unmodifiable list of matching songs, empty if there are none.
+	 */
+	public synchronized List<Song> getSongsByFile(String fileName)
+	{
+		ensureIndexed();
+		return lookup(songsByFile, fileName);
+	}
+	
+	/**
+	 * Returns the songs whose names and artists best match what a user typed,
+	 * best first. See SongSearchIndex for how songs are matched and ranked.
+	 * 
+	 * @param query The words to find. The last may be unfinished.
+	 * @param limit The most songs to return.
+	 * @return An unmodifiable list of matching songs, empty if there are none.
+	 */
+	public synchronized List<Song> search(String query, int limit)
 	{
-		return 3;
+		ensureIndexed();
+		return searchIndex.search(query, limit);
 	}
 	
-	// Get the name for each column
-	@Override
-	public String getColumnName(int index)
+	/**
+	 * Returns which rows of the library hold the songs found by searching it for
+	 * what a user typed, all in one step, so the rows match one another however
+	 * the library changes meanwhile.
+	 * 
+	 * @return An array with an element for each row, true for the rows found.
+	 */
+	public synchronized boolean[] searchRows(String query)
 	{
-		if (index == 0)
+		ensureIndexed();
+		Set<Song> found = Collections.newSetFromMap(new IdentityHashMap<Song, Boolean>());
+		found.addAll(searchIndex.search(query, getRowCount()));
+		boolean[] rows = new boolean[getRowCount()];
+		for (int row = 0; row < rows.length; row++)
 		{
-			return "Artist";
+			rows[row] = found.contains(getSongAt(row));
 		}
-		else if (index == 1)
+		return rows;
+	}
+	
+	/**
+	 * Reads a key from a secondary index.
+	 */
+	private static List<Song> lookup(HashMap<String, List<Song>> index, String key)
+	{
+		List<Song> bucket = index.get(key);
+		if (bucket == null)
 		{
-			return "Song";
+			return Collections.emptyList();
 		}
-		return "Seconds";
+		// a copy, the bucket may change once the library is unlocked
+		return Collections.unmodifiableList(new ArrayList<Song>(bucket));
 	}
 	
 	// Number of rows = number of songs
-	@Override
-	public int getRowCount()
+	public synchronized int getRowCount()
 	{
+		if (songs == null)
+		{
+			return mapped.getRecordCount();
+		}
 		return songs.size();
 	}
 	
-	// Returns the appropriate field of the appropriate song
-	@Override
-	public Object getValueAt(int row, int col)
+	/**
+	 * Returns the value of the column in every row, as getValueAt() gives it,
+	 * all in one step, so none is missed however the library changes meanwhile.
+	 */
+	public synchronized Object[] getColumn(int col)
+	{
+		Object[] values = new Object[getRowCount()];
+		for (int row = 0; row < values.length; row++)
+		{
+			values[row] = getValueAt(row, col);
+		}
+		return values;
+	}
+	
+	// Returns the appropriate field of the appropriate song, one of the column
+	// constants, reading a mapped library in place rather than building the song
+	public synchronized Object getValueAt(int row, int col)
 	{
+		if (songs == null)
+		{
+			if (col == ARTIST_COLUMN)
+			{
+				return readString(row, ARTIST_FIELD);
+			}
+			if (col == NAME_COLUMN)
+			{
+				return readString(row, NAME_FIELD);
+			}
+			return mapped.getInt(row, LENGTH_FIELD);
+		}
 		Song song = songs.get(row);
-		if (col == 0)
+		if (col == ARTIST_COLUMN)
 		{
 			return song.getArtist();
 		}
-		if (col == 1)
+		if (col == NAME_COLUMN)
 		{
 			return song.getName();
 		}
 		return song.getLength();
 	}
-	
-	// Can not edit the table
-	@Override
-	public boolean isCellEditable(int row, int col)
-	{
-		return false;
-	}
-	
-	// No need to implement these
-	
-	@Override
-	public void addTableModelListener(TableModelListener listener) {}
-	
-	@Override
-	public void removeTableModelListener(TableModelListener listener) {}
-	
-	@Override
-	public void setValueAt(Object val, int row, int col) {}
-
 }
@@ -0,0 +1,28 @@
+package src.model;
+
+/**
+ * Listens for changes to the SongLibrary. Each method is called on the thread
+ * that changed the library, while the library is locked, just after the
+ * change, so a listener sees the library exactly as the change left it and
+ * must return quickly without waiting on another thread.
+ * 
+ * @author Taylor Heimbichner
+ */
+public interface SongLibraryListener
+{
+	/**
+	 * Called when songs have been added to the library at the given rows.
+	 */
+	public void songsAdded(SongLibrary library, int firstRow, int lastRow);
+	
+	/**
+	 * Called when the songs at the given rows have been removed from the library.
+	 * Rows after them have moved up to fill the gap.
+	 */
+	public void songsRemoved(SongLibrary library, int firstRow, int lastRow);
+	
+	/**
+	 * Called when every song in the library has been replaced.
+	 */
+	public void songsReplaced(SongLibrary library);
+}
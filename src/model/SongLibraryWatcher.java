@@ -0,0 +1,314 @@
+package src.model;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the SongLibrary up to date with a directory of song files while the
+ * Jukebox runs. Songs found in files that are not in the library yet are added
+ * when the watcher starts, and from then on files added, changed or removed
+ * under the directory add, replace or remove their songs.
+ * 
+ * Changes are not acted on one by one. Once a change is seen, the watcher waits
+ * until the directory has been quiet for QUIET_MILLIS, or at most MAX_WAIT_MILLIS,
+ * and then rescans it with a SongScanner, which only probes the files that
+ * changed. Scanning is done on the watcher's own thread. The library is changed
+ * on the Executor given, in steps of at most BATCH songs, so that when it is
+ * shown by Swing it can be changed on the event dispatch thread without holding
+ * that thread for long, even when thousands of files arrive at once.
+ * 
+ * Songs are matched with those in the library by file name, so a song loaded
+ * from the saved library or found by another scan is kept while its file is
+ * unchanged, and replaced or removed once it changes or is gone, just as a song
+ * the watcher added itself. Songs in other files are left alone.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class SongLibraryWatcher
+{
+	// how long the directory must be quiet before it is rescanned
+	private static final long QUIET_MILLIS = 300;
+	
+	// the longest a change waits for the directory to be quiet
+	private static final long MAX_WAIT_MILLIS = 3000;
+	
+	// most songs added to or removed from the library in one step
+	private static final int BATCH = 128;
+	
+	// the library kept up to date
+	private final SongLibrary library;
+	
+	// finds the songs in the directory
+	private final SongScanner scanner;
+	
+	// the directory watched
+	private final Path root;
+	
+	// changes the library
+	private final Executor executor;
+	
+	// the song found in each file by the last scan, by fully qualified file
+	// name, only used by the watcher's thread
+	private HashMap<String, Song> found = new HashMap<String, Song>();
+	
+	private WatchService watchService;
+	private Thread thread;
+	
+	/**
+	 * Creates a watcher of the songfiles directory that changes the library on
+	 * the given executor.
+	 */
+	public SongLibraryWatcher(SongLibrary library, Executor executor)
+	{
+		this(library, new SongScanner(), executor);
+	}
+	
+	/**
+	 * Creates a watcher of the directory scanned by the given scanner that
+	 * changes the library on the given executor.
+	 */
+	public SongLibraryWatcher(SongLibrary library, SongScanner scanner, Executor executor)
+	{
+		this.library = library;
+		this.scanner = scanner;
+		this.root = scanner.getRoot();
+		this.executor = executor;
+	}
+	
+	/**
+	 * Starts watching the directory, and adds the songs already in it to the
+	 * library. Does nothing if the watcher has started already.
+	 * 
+	 * @throws IOException If the directory can not be watched.
+	 */
+	public synchronized void start() throws IOException
+	{
+		if (thread != null)
+		{
+			return;
+		}
+		watchService = root.getFileSystem().newWatchService();
+		register(root);
+		thread = new Thread(this::run, "Song library watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Stops watching the directory. Changes already being scanned may still be
+	 * made to the library.
+	 */
+	public synchronized void stop()
+	{
+		if (thread == null)
+		{
+			return;
+		}
+		try
+		{
+			watchService.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Closing the song library watcher failed");
+			e.printStackTrace();
+		}
+		thread.interrupt();
+		thread = null;
+	}
+	
+	/**
+	 * Registers the directory and every directory below it with the watch service.
+	 */
+	private void register(Path dir) throws IOException
+	{
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException
+			{
+				d.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+	
+	/**
+	 * Scans the directory, then rescans it after each quiet spell that follows a
+	 * change, until the watch service is closed.
+	 */
+	private void run()
+	{
+		try
+		{
+			rescan();
+			while (true)
+			{
+				// wait for a change, then for the directory to be quiet
+				drain(watchService.take());
+				long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+				long wait = QUIET_MILLIS;
+				WatchKey key;
+				while (wait > 0 && (key = watchService.poll(wait, TimeUnit.MILLISECONDS)) != null)
+				{
+					drain(key);
+					wait = Math.min(QUIET_MILLIS, deadline - System.currentTimeMillis());
+				}
+				rescan();
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e)
+		{
+			// stopped
+		}
+	}
+	
+	/**
+	 * Reads the events of a key, registering each new directory, and lets the key
+	 * report further events.
+	 */
+	private void drain(WatchKey key)
+	{
+		Path dir = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents())
+		{
+			if (event.kind() == ENTRY_CREATE)
+			{
+				Path child = dir.resolve((Path) event.context());
+				if (Files.isDirectory(child))
+				{
+					try
+					{
+						register(child);
+					}
+					catch (IOException e)
+					{
+						System.err.println("Watching " + child + " failed");
+						e.printStackTrace();
+					}
+				}
+			}
+			// other events, and lost events, are found by rescanning
+		}
+		key.reset();
+	}
+	
+	/**
+	 * Scans the directory and changes the library to match: songs whose files
+	 * are gone are removed, and the songs in new or changed files replace those
+	 * the library holds for them.
+	 */
+	private void rescan()
+	{
+		List<Song> scanned;
+		try
+		{
+			scanned = scanner.scan();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Scanning " + root + " failed");
+			e.printStackTrace();
+			return;
+		}
+		
+		// the scanner gives the same song for each file that has not changed
+		HashMap<String, Song> now = new HashMap<String, Song>();
+		ArrayList<Song> changed = new ArrayList<Song>();
+		for (Song song : scanned)
+		{
+			now.put(song.getFileName(), song);
+			if (found.get(song.getFileName()) != song)
+			{
+				changed.add(song);
+			}
+		}
+		ArrayList<String> gone = new ArrayList<String>();
+		for (String file : found.keySet())
+		{
+			if (!now.containsKey(file))
+			{
+				gone.add(file);
+			}
+		}
+		found = now;
+		
+		for (int i = 0; i < gone.size(); i += BATCH)
+		{
+			List<String> batch = gone.subList(i, Math.min(gone.size(), i + BATCH));
+			executor.execute(() -> remove(batch));
+		}
+		for (int i = 0; i < changed.size(); i += BATCH)
+		{
+			List<Song> batch = changed.subList(i, Math.min(changed.size(), i + BATCH));
+			executor.execute(() -> update(batch));
+		}
+	}
+	
+	/**
+	 * Removes the songs the library holds for the given files. Runs on the executor.
+	 */
+	private void remove(List<String> files)
+	{
+		synchronized (library)
+		{
+			ArrayList<Song> removed = new ArrayList<Song>();
+			for (String file : files)
+			{
+				removed.addAll(library.getSongsByFile(file));
+			}
+			library.removeSongs(removed);
+		}
+	}
+	
+	/**
+	 * Adds the songs to the library, each in place of the songs the library holds
+	 * for its file, unless the library holds the same song for it already, as it
+	 * does for files that have not changed since the library was saved. Runs on
+	 * the executor.
+	 */
+	private void update(List<Song> songs)
+	{
+		synchronized (library)
+		{
+			ArrayList<Song> removed = new ArrayList<Song>();
+			ArrayList<Song> added = new ArrayList<Song>();
+			for (Song song : songs)
+			{
+				List<Song> old = library.getSongsByFile(song.getFileName());
+				if (old.size() == 1 && isSame(old.get(0), song))
+				{
+					continue;
+				}
+				removed.addAll(old);
+				added.add(song);
+			}
+			library.removeSongs(removed);
+			library.addSongs(added);
+		}
+	}
+	
+	// Returns true if the songs have the same name, artist and length
+	private static boolean isSame(Song a, Song b)
+	{
+		return a.getName().equals(b.getName()) && a.getArtist().equals(b.getArtist())
+				&& a.getLength() == b.getLength();
+	}
+}
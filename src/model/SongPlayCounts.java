@@ -0,0 +1,65 @@
+package src.model;
+
+/**
+ * Counts how many times each song has been played today, to enforce the
+ * daily limit on plays of a song. A play is first reserved, which checks the
+ * limit and counts the play in one step, and is then either confirmed once the
+ * song is queued or released if it could not be.
+ * 
+ * @author Taylor Heimbichner
+ */
+public interface SongPlayCounts
+{
+	/**
+	 * The counts of every song, kept in the songs' PlayCounters and saved with
+	 * the SongLibrary.
+	 */
+	public static final SongPlayCounts SHARED = new SongPlayCounts()
+	{
+		@Override
+		public boolean canPlay(Song song)
+		{
+			return song.canPlay();
+		}
+		
+		@Override
+		public boolean reservePlay(Song song)
+		{
+			return song.reservePlay();
+		}
+		
+		@Override
+		public void releasePlay(Song song)
+		{
+			song.releasePlay();
+		}
+		
+		@Override
+		public void confirmPlay(Song song)
+		{
+			song.confirmPlay();
+		}
+	};
+	
+	/**
+	 * Returns true if the song may be played again today.
+	 */
+	public boolean canPlay(Song song);
+	
+	/**
+	 * Counts a play of the song if it may be played again today.
+	 * 
+	 * @return true if the play was counted.
+	 */
+	public boolean reservePlay(Song song);
+	
+	/**
+	 * Takes back a play counted by reservePlay().
+	 */
+	public void releasePlay(Song song);
+	
+	/**
+	 * Keeps a play counted by reservePlay(), now that the song is queued.
+	 */
+	public void confirmPlay(Song song);
+}
@@ -0,0 +1,29 @@
+package src.model;
+
+/**
+ * Listens for changes to a ReadableSongQueue. Each method is called while the
+ * queue is locked, just after the change, so a listener sees the queue exactly
+ * as the change left it and must return quickly without waiting on another
+ * thread.
+ * 
+ * @author Taylor Heimbichner
+ */
+public interface SongQueueListener
+{
+	/**
+	 * Called when songs have been added to the back of the queue.
+	 * 
+	 * @param count The number of songs added, at least 1.
+	 */
+	public void songsAdded(ReadableSongQueue queue, int count);
+	
+	/**
+	 * Called when the song at the front of the queue has been removed.
+	 */
+	public void songRemoved(ReadableSongQueue queue);
+	
+	/**
+	 * Called when every song in the queue has been replaced.
+	 */
+	public void songsReplaced(ReadableSongQueue queue);
+}
@@ -0,0 +1,376 @@
+package src.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/**
+ * Finds the songs in a directory of song files and everything below it, for
+ * SongLibrary.scanSongs() to replace the library with.
+ * 
+ * Each directory is listed by a fork join task of its own, and its files are
+ * probed in batches by further tasks, so large trees are read by every thread
+ * of the scanner's pool at once. Only files with the extension of a type
+ * AudioSystem can read are probed. A file's length in seconds comes from its
+ * audio format, and its name and artist from a file name of the form
+ * "Artist - Name", or just "Name" by an Unknown artist. Links to files are
+ * followed, but links to directories are not, as one could lead back to a
+ * directory above it and have the scan go on forever.
+ * 
+ * The scanner remembers the size and modification time of each file it has
+ * seen. A later scan only probes the files that are new or have changed since,
+ * and returns the very same Song for every other file, so its plays today are
+ * kept.
+ * 
+ * How long each scan takes, and how many files it probes and reuses, are
+ * recorded as metrics.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class SongScanner
+{
+	// most files probed by one task
+	private static final int BATCH = 32;
+	
+	// the artist of songs whose file names do not give one
+	private static final String UNKNOWN_ARTIST = "Unknown";
+	
+	// separates the artist from the name in a file name
+	private static final String ARTIST_SEPARATOR = " - ";
+	
+	// how long scans take, and the files they probed and found unchanged
+	private static final LatencyHistogram SCAN_TIMES = Metrics.getInstance().histogram("library.scan");
+	private static final Counter PROBED_FILES = Metrics.getInstance().counter("library.scan.probed");
+	private static final Counter REUSED_FILES = Metrics.getInstance().counter("library.scan.reused");
+	
+	// the directory scanned
+	private final Path root;
+	
+	// the threads that scan
+	private final ForkJoinPool pool;
+	
+	// file name extensions of the types AudioSystem can read, in lower case
+	private final HashSet<String> extensions = new HashSet<String>();
+	
+	// what the last scan found in each file, by path, with a null song for a
+	// file that could not be read
+	private ConcurrentHashMap<Path, Scanned> scanned = new ConcurrentHashMap<Path, Scanned>();
+	
+	// files probed and files read from the last scan, during the last scan
+	private final AtomicInteger probed = new AtomicInteger();
+	private final AtomicInteger reused = new AtomicInteger();
+	
+	/**
+	 * Creates a scanner of the songfiles directory that songs are played from,
+	 * with a thread for each processor.
+	 */
+	public SongScanner()
+	{
+		this(Paths.get(Song.BASE_DIR), Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Creates a scanner of the given directory with the given number of threads.
+	 * The file names of the songs found are relative to root, so only songs
+	 * found under the songfiles directory can be played.
+	 */
+	public SongScanner(Path root, int threads)
+	{
+		this.root = root;
+		pool = new ForkJoinPool(threads);
+		for (AudioFileFormat.Type type : AudioSystem.getAudioFileTypes())
+		{
+			extensions.add(type.getExtension().toLowerCase(Locale.ROOT));
+		}
+	}
+	
+	/**
+	 * Finds every song under the directory, probing only the files that are new
+	 * or have changed since the last scan.
+	 * 
+	 * @return The songs found, ordered by file name.
+	 * @throws IOException If a directory could not be listed.
+	 */
+	public synchronized List<Song> scan() throws IOException
+	{
+		long start = System.nanoTime();
+		probed.set(0);
+		reused.set(0);
+		ConcurrentHashMap<Path, Scanned> found = new ConcurrentHashMap<Path, Scanned>();
+		try
+		{
+			pool.invoke(new DirectoryTask(root, found));
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		// files that are gone are forgotten
+		scanned = found;
+		
+		ArrayList<Song> songs = new ArrayList<Song>(found.size());
+		for (Scanned file : found.values())
+		{
+			if (file.song != null)
+			{
+				songs.add(file.song);
+			}
+		}
+		songs.sort(Comparator.comparing(Song::getShortFileName));
+		SCAN_TIMES.recordSince(start);
+		PROBED_FILES.add(probed.get());
+		REUSED_FILES.add(reused.get());
+		return songs;
+	}
+	
+	/**
+	 * Returns the directory scanned.
+	 */
+	public Path getRoot()
+	{
+		return root;
+	}
+	
+	/**
+	 * Returns the number of files probed by the last scan.
+	 */
+	public int getProbedCount()
+	{
+		return probed.get();
+	}
+	
+	/**
+	 * Returns the number of files the last scan found unchanged and did not probe.
+	 */
+	public int getReusedCount()
+	{
+		return reused.get();
+	}
+	
+	/**
+	 * Stops the scanner's threads.
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+	
+	/**
+	 * Returns the scanned file, reusing what the last scan found if the file has
+	 * the same size and modification time, and probing it otherwise.
+	 */
+	private Scanned scanFile(Path file, BasicFileAttributes attrs)
+	{
+		long modified = attrs.lastModifiedTime().toMillis();
+		long size = attrs.size();
+		Scanned last = scanned.get(file);
+		if (last != null && last.modified == modified && last.size == size)
+		{
+			reused.incrementAndGet();
+			return last;
+		}
+		probed.incrementAndGet();
+		return new Scanned(modified, size, probe(file, size));
+	}
+	
+	/**
+	 * Reads the audio format of the file and makes a song of it.
+	 * 
+	 * @return The song, or null if the file can not be read as audio.
+	 */
+	private Song probe(Path file, long size)
+	{
+		try
+		{
+			AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(file.toFile());
+			AudioFormat format = fileFormat.getFormat();
+			double seconds;
+			Object micros = fileFormat.getProperty("duration");
+			if (micros instanceof Long)
+			{
+				seconds = (Long) micros / 1e6;
+			}
+			else if (fileFormat.getFrameLength() != AudioSystem.NOT_SPECIFIED && format.getFrameRate() > 0)
+			{
+				seconds = fileFormat.getFrameLength() / format.getFrameRate();
+			}
+			else if (format.getFrameSize() > 0 && format.getFrameRate() > 0)
+			{
+				// streams of unknown length are assumed to fill the file
+				seconds = size / (format.getFrameSize() * (double) format.getFrameRate());
+			}
+			else
+			{
+				return null;
+			}
+			
+			String shortName = root.relativize(file).toString();
+			String title = file.getFileName().toString();
+			title = title.substring(0, title.lastIndexOf('.'));
+			String artist = UNKNOWN_ARTIST;
+			int separator = title.indexOf(ARTIST_SEPARATOR);
+			if (separator > 0)
+			{
+				artist = title.substring(0, separator).trim();
+				title = title.substring(separator + ARTIST_SEPARATOR.length()).trim();
+			}
+			return new Song(title, shortName, Math.max(1, (int) Math.round(seconds)), artist);
+		}
+		catch (UnsupportedAudioFileException | IOException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns true if the file has the extension of a type AudioSystem can read.
+	 */
+	private boolean isAudioFile(Path file)
+	{
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 && extensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+	}
+	
+	/**
+	 * What a scan found in one file.
+	 */
+	private static class Scanned
+	{
+		private final long modified;
+		private final long size;
+		private final Song song;
+		
+		private Scanned(long modified, long size, Song song)
+		{
+			this.modified = modified;
+			this.size = size;
+			this.song = song;
+		}
+	}
+	
+	/**
+	 * Lists a directory, scanning its subdirectories and batches of its files in
+	 * tasks of their own.
+	 */
+	@SuppressWarnings("serial")
+	private class DirectoryTask extends RecursiveAction
+	{
+		private final Path dir;
+		private final ConcurrentHashMap<Path, Scanned> found;
+		
+		private DirectoryTask(Path dir, ConcurrentHashMap<Path, Scanned> found)
+		{
+			this.dir = dir;
+			this.found = found;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+			ArrayList<Path> files = new ArrayList<Path>();
+			ArrayList<BasicFileAttributes> attributes = new ArrayList<BasicFileAttributes>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir))
+			{
+				for (Path entry : entries)
+				{
+					BasicFileAttributes attrs;
+					try
+					{
+						attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+						if (attrs.isSymbolicLink())
+						{
+							attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+							if (attrs.isDirectory())
+							{
+								// may lead back up the tree
+								continue;
+							}
+						}
+					}
+					catch (IOException e)
+					{
+						// a broken link, or a file removed while listing
+						continue;
+					}
+					if (attrs.isDirectory())
+					{
+						tasks.add(new DirectoryTask(entry, found));
+					}
+					else if (attrs.isRegularFile() && isAudioFile(entry))
+					{
+						files.add(entry);
+						attributes.add(attrs);
+						if (files.size() == BATCH)
+						{
+							tasks.add(new FileTask(files, attributes, found));
+							files = new ArrayList<Path>();
+							attributes = new ArrayList<BasicFileAttributes>();
+						}
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+			if (!files.isEmpty())
+			{
+				tasks.add(new FileTask(files, attributes, found));
+			}
+			invokeAll(tasks);
+		}
+	}
+	
+	/**
+	 * Scans a batch of files.
+	 */
+	@SuppressWarnings("serial")
+	private class FileTask extends RecursiveAction
+	{
+		private final List<Path> files;
+		private final List<BasicFileAttributes> attributes;
+		private final ConcurrentHashMap<Path, Scanned> found;
+		
+		private FileTask(List<Path> files, List<BasicFileAttributes> attributes,
+				ConcurrentHashMap<Path, Scanned> found)
+		{
+			this.files = files;
+			this.attributes = attributes;
+			this.found = found;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			for (int i = 0; i < files.size(); i++)
+			{
+				found.put(files.get(i), scanFile(files.get(i), attributes.get(i)));
+			}
+		}
+	}
+}
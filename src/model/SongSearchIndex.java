@@ -0,0 +1,509 @@
+package src.model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * An inverted index over the names and artists of songs, for finding songs by
+ * what a user types rather than by their exact name.
+ * 
+ * Names, artists and queries are split into words, ignoring case and accents.
+ * A song matches a query when every word of the query matches a word of its
+ * name or artist, either exactly, as the start of the word, or, for query words
+ * of at least MIN_TYPO_LENGTH letters, with one typo: a letter other than the
+ * first wrong, missing, added or swapped with its neighbour. Exact matches rank above
+ * prefixes, prefixes above typos, and matches in the name above matches in the
+ * artist. Songs that rank the same are given in the order they were added.
+ * 
+ * A search walks the songs matching its rarest word, best match first, and
+ * stops as soon as no song left can rank among those found, so it reads only a
+ * small part of a large index. A song left that could rank the same as the
+ * worst found is still read if it was added before it, since it would come
+ * first.
+ * 
+ * The index does not depend on Swing, and every public method locks it, so it
+ * may be used from any thread.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class SongSearchIndex
+{
+	// shortest query word that may match with a typo
+	public static final int MIN_TYPO_LENGTH = 4;
+	
+	// the accents left as separate marks once text is decomposed
+	private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+	
+	// how well a query word matches a word of a song
+	private static final int NO_MATCH = 0;
+	private static final int TYPO = 1;
+	private static final int PREFIX = 2;
+	private static final int EXACT = 3;
+	
+	// the indexed songs by id, null once removed
+	private ArrayList<Doc> docs = new ArrayList<Doc>();
+	
+	// the number of nulls in docs, whose postings are still in terms
+	private int removed;
+	
+	// ids of the indexed songs, songs are compared by identity
+	private final IdentityHashMap<Song, Integer> ids = new IdentityHashMap<Song, Integer>();
+	
+	// the songs containing each word, in the order they were added
+	private final TreeMap<String, Postings> terms = new TreeMap<String, Postings>();
+	
+	/**
+	 * Adds the song to the index. Does nothing if it is indexed already.
+	 */
+	public synchronized void add(Song song)
+	{
+		if (ids.containsKey(song))
+		{
+			return;
+		}
+		int id = docs.size();
+		Doc doc = new Doc(song, intern(tokenize(song.getName())), intern(tokenize(song.getArtist())));
+		docs.add(doc);
+		ids.put(song, id);
+		for (String term : doc.name)
+		{
+			terms.computeIfAbsent(term, k -> new Postings()).add(id << 1 | 1);
+		}
+		for (String term : doc.artist)
+		{
+			terms.computeIfAbsent(term, k -> new Postings()).add(id << 1);
+		}
+	}
+	
+	/**
+	 * Removes the song from the index. Does nothing if it is not indexed.
+	 */
+	public synchronized void remove(Song song)
+	{
+		Integer id = ids.remove(song);
+		if (id == null)
+		{
+			return;
+		}
+		// the song's postings are left for searches to skip until they are
+		// outnumbered by those of songs still indexed
+		docs.set(id, null);
+		removed++;
+		if (removed > ids.size())
+		{
+			compact();
+		}
+	}
+	
+	/**
+	 * Drops the postings of removed songs, and the words only they contained,
+	 * numbering the songs left from 0 again.
+	 */
+	private void compact()
+	{
+		int[] newIds = new int[docs.size()];
+		ArrayList<Doc> kept = new ArrayList<Doc>(ids.size());
+		for (int id = 0; id < docs.size(); id++)
+		{
+			Doc doc = docs.get(id);
+			newIds[id] = kept.size();
+			if (doc != null)
+			{
+				ids.put(doc.song, kept.size());
+				kept.add(doc);
+			}
+		}
+		Iterator<Postings> it = terms.values().iterator();
+		while (it.hasNext())
+		{
+			Postings postings = it.next();
+			int size = 0;
+			for (int i = 0; i < postings.size; i++)
+			{
+				int id = postings.values[i] >>> 1;
+				if (docs.get(id) != null)
+				{
+					postings.values[size++] = newIds[id] << 1 | (postings.values[i] & 1);
+				}
+			}
+			postings.size = size;
+			if (size == 0)
+			{
+				it.remove();
+			}
+		}
+		docs = kept;
+		removed = 0;
+	}
+	
+	/**
+	 * Removes every song from the index.
+	 */
+	public synchronized void clear()
+	{
+		docs.clear();
+		ids.clear();
+		terms.clear();
+		removed = 0;
+	}
+	
+	/**
+	 * Returns the number of songs indexed.
+	 */
+	public synchronized int size()
+	{
+		return ids.size();
+	}
+	
+	/**
+	 * Returns the songs best matching the query, best first.
+	 * 
+	 * @param query Words typed by a user. The last may be unfinished.
+	 * @param limit The most songs to return.
+	 * @return An unmodifiable list of matching songs, empty if there are none.
+	 */
+	public synchronized List<Song> search(String query, int limit)
+	{
+		String[] words = tokenize(query);
+		if (words.length == 0 || limit <= 0)
+		{
+			return Collections.emptyList();
+		}
+		
+		// the songs matching the rarest word are walked and checked against the others
+		String driver = words[0];
+		int fewest = (words.length > 1) ? countMatches(driver, Integer.MAX_VALUE) : 0;
+		for (int i = 1; i < words.length; i++)
+		{
+			int count = countMatches(words[i], fewest);
+			if (count < fewest)
+			{
+				driver = words[i];
+				fewest = count;
+			}
+		}
+		int othersBest = rank(EXACT, true) * (words.length - 1);
+		
+		// the worst of the best songs found so far is at the head
+		PriorityQueue<Hit> best = new PriorityQueue<Hit>();
+		BitSet seen = new BitSet();
+		for (int match = EXACT; match >= TYPO; match--)
+		{
+			int bound = rank(match, true) + othersBest;
+			if (isFull(best, limit, bound))
+			{
+				break;
+			}
+			for (String term : matchingTerms(driver, match))
+			{
+				if (!collect(terms.get(term), words, limit, bound, best, seen))
+				{
+					break;
+				}
+			}
+		}
+		
+		Song[] found = new Song[best.size()];
+		for (int i = found.length - 1; i >= 0; i--)
+		{
+			found[i] = docs.get(best.poll().id).song;
+		}
+		return Collections.unmodifiableList(Arrays.asList(found));
+	}
+	
+	/**
+	 * Returns the number of times the word is the whole or the start of a word
+	 * of a song, or any number over max once it is known to be over max.
+	 */
+	private int countMatches(String word, int max)
+	{
+		int count = 0;
+		for (Postings postings : terms.subMap(word, true, word + Character.MAX_VALUE, false).values())
+		{
+			count += postings.size;
+			if (count > max)
+			{
+				break;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Ranks each song in the postings against every word, keeping the best limit
+	 * of them.
+	 * 
+	 * @return false once no song left can rank among the best.
+	 */
+	private boolean collect(Postings postings, String[] words, int limit, int bound, PriorityQueue<Hit> best,
+			BitSet seen)
+	{
+		for (int i = 0; i < postings.size; i++)
+		{
+			if (isFull(best, limit, bound))
+			{
+				return false;
+			}
+			int id = postings.values[i] >>> 1;
+			if (best.size() == limit && best.peek().score >= bound && id > best.peek().id)
+			{
+				// the rest of the postings are of songs added later still, so
+				// can at best tie with the worst song found and come after it
+				return true;
+			}
+			if (seen.get(id) || docs.get(id) == null)
+			{
+				continue;
+			}
+			seen.set(id);
+			int score = score(docs.get(id), words);
+			if (score > 0)
+			{
+				best.add(new Hit(id, score));
+				if (best.size() > limit)
+				{
+					best.poll();
+				}
+			}
+		}
+		return true;
+	}
+	
+	// Returns true if limit songs were found, all ranking above bound, so no
+	// song ranking at most bound can take the place of one
+	private static boolean isFull(PriorityQueue<Hit> best, int limit, int bound)
+	{
+		return best.size() == limit && best.peek().score > bound;
+	}
+	
+	/**
+	 * Returns the terms that match the word in the given way, those that match
+	 * it better left out.
+	 */
+	private Iterable<String> matchingTerms(String word, int match)
+	{
+		if (match == EXACT)
+		{
+			return terms.containsKey(word) ? Collections.singletonList(word) : Collections.<String> emptyList();
+		}
+		if (match == PREFIX)
+		{
+			return terms.subMap(word, false, word + Character.MAX_VALUE, false).keySet();
+		}
+		ArrayList<String> typos = new ArrayList<String>();
+		if (word.length() >= MIN_TYPO_LENGTH)
+		{
+			// typos after the first letter, so only words starting with it are tried
+			String first = word.substring(0, 1);
+			for (String term : terms.subMap(first, true, first + Character.MAX_VALUE, false).keySet())
+			{
+				if (Math.abs(term.length() - word.length()) <= 1 && !term.startsWith(word) && isOneEdit(word, term))
+				{
+					typos.add(term);
+				}
+			}
+		}
+		return typos;
+	}
+	
+	/**
+	 * Returns the rank of the song for the query words, the sum of how well each
+	 * matches its best word of the song, or 0 if any does not match.
+	 */
+	private static int score(Doc doc, String[] words)
+	{
+		int total = 0;
+		for (String word : words)
+		{
+			int best = Math.max(rank(bestMatch(word, doc.name), true), rank(bestMatch(word, doc.artist), false));
+			if (best == 0)
+			{
+				return 0;
+			}
+			total += best;
+		}
+		return total;
+	}
+	
+	// Returns the rank of a match, matches in the name ranking just above
+	// those in the artist
+	private static int rank(int match, boolean inName)
+	{
+		if (match == NO_MATCH)
+		{
+			return 0;
+		}
+		return inName ? 2 * match : 2 * match - 1;
+	}
+	
+	// Returns how well the word matches the best of the terms
+	private static int bestMatch(String word, String[] terms)
+	{
+		int best = NO_MATCH;
+		for (String term : terms)
+		{
+			if (term.equals(word))
+			{
+				return EXACT;
+			}
+			if (term.startsWith(word))
+			{
+				best = PREFIX;
+			}
+			else if (best == NO_MATCH && word.length() >= MIN_TYPO_LENGTH && term.charAt(0) == word.charAt(0)
+					&& isOneEdit(word, term))
+			{
+				best = TYPO;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Returns true if a differs from b by exactly one letter changed, removed,
+	 * added or swapped with its neighbour.
+	 */
+	static boolean isOneEdit(String a, String b)
+	{
+		int la = a.length();
+		int lb = b.length();
+		if (Math.abs(la - lb) > 1)
+		{
+			return false;
+		}
+		int i = 0;
+		while (i < la && i < lb && a.charAt(i) == b.charAt(i))
+		{
+			i++;
+		}
+		if (i == la && i == lb)
+		{
+			return false;
+		}
+		if (la == lb)
+		{
+			// one letter changed, or two neighbours swapped
+			if (a.regionMatches(i + 1, b, i + 1, la - i - 1))
+			{
+				return true;
+			}
+			return i + 1 < la && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+					&& a.regionMatches(i + 2, b, i + 2, la - i - 2);
+		}
+		// one letter removed from the longer
+		return (la > lb) ? a.regionMatches(i + 1, b, i, lb - i) : b.regionMatches(i + 1, a, i, la - i);
+	}
+	
+	/**
+	 * Splits text into lower case words of letters and digits, without accents.
+	 */
+	static String[] tokenize(String text)
+	{
+		String plain = ACCENTS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+				.toLowerCase(Locale.ROOT);
+		ArrayList<String> words = new ArrayList<String>();
+		int start = -1;
+		for (int i = 0; i <= plain.length(); i++)
+		{
+			boolean inWord = i < plain.length() && Character.isLetterOrDigit(plain.charAt(i));
+			if (inWord && start < 0)
+			{
+				start = i;
+			}
+			else if (!inWord && start >= 0)
+			{
+				words.add(plain.substring(start, i));
+				start = -1;
+			}
+		}
+		return words.toArray(new String[words.size()]);
+	}
+	
+	// Replaces each word with the copy used as a key of terms, so songs sharing a
+	// word share one string
+	private String[] intern(String[] words)
+	{
+		for (int i = 0; i < words.length; i++)
+		{
+			Map.Entry<String, Postings> entry = terms.ceilingEntry(words[i]);
+			if (entry != null && entry.getKey().equals(words[i]))
+			{
+				words[i] = entry.getKey();
+			}
+		}
+		return words;
+	}
+	
+	/**
+	 * An indexed song and the words of its name and artist.
+	 */
+	private static class Doc
+	{
+		private final Song song;
+		private final String[] name;
+		private final String[] artist;
+		
+		private Doc(Song song, String[] name, String[] artist)
+		{
+			this.song = song;
+			this.name = name;
+			this.artist = artist;
+		}
+	}
+	
+	/**
+	 * A song found by a search and its rank. The worst rank orders first, and
+	 * of songs ranking the same, the last added.
+	 */
+	private static class Hit implements Comparable<Hit>
+	{
+		private final int id;
+		private final int score;
+		
+		private Hit(int id, int score)
+		{
+			this.id = id;
+			this.score = score;
+		}
+		
+		@Override
+		public int compareTo(Hit other)
+		{
+			if (score != other.score)
+			{
+				return Integer.compare(score, other.score);
+			}
+			return Integer.compare(other.id, id);
+		}
+	}
+	
+	/**
+	 * A growable array of postings, each a song id shifted left by one with the
+	 * low bit set if the word is in the song's name.
+	 */
+	private static class Postings
+	{
+		private int[] values = new int[2];
+		private int size;
+		
+		private void add(int posting)
+		{
+			if (size == values.length)
+			{
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = posting;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package src.model;
+
+import java.util.HashMap;
+
+/**
+ * Counts the plays of songs at one venue, apart from the counts of
+ * SongPlayCounts.SHARED, so that several venues can share one SongLibrary. Only
+ * songs played today are held, and the counts are dropped together on the
+ * first use after the day changes. The counts are not saved.
+ * 
+ * Unlike the shared counts these are not kept in PlayCounters, whose columns
+ * would have a counter for every song ever built at each venue, though a venue
+ * only plays a few songs a day.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class VenuePlayCounts implements SongPlayCounts
+{
+	// plays of each song today, songs are compared by identity
+	private final HashMap<Song, Integer> plays = new HashMap<Song, Integer>();
+	
+	// the epoch day on which plays were counted
+	private long day = DateUpdater.getInstance().getDay();
+	
+	@Override
+	public synchronized boolean canPlay(Song song)
+	{
+		return getTimesPlayed(song) < Song.MAX_PLAYS;
+	}
+	
+	@Override
+	public synchronized boolean reservePlay(Song song)
+	{
+		if (!canPlay(song))
+		{
+			return false;
+		}
+		plays.merge(song, 1, Integer::sum);
+		return true;
+	}
+	
+	@Override
+	public synchronized void releasePlay(Song song)
+	{
+		// the counts may have been dropped at midnight since the play was counted
+		plays.computeIfPresent(song, (s, count) -> (count > 1) ? count - 1 : null);
+	}
+	
+	// Plays at a venue are not journaled, so there is nothing more to do
+	@Override
+	public void confirmPlay(Song song)
+	{
+	}
+	
+	/**
+	 * Returns the number of times the song has been played here today.
+	 */
+	public synchronized int getTimesPlayed(Song song)
+	{
+		resetIfNewDay();
+		return plays.getOrDefault(song, 0);
+	}
+	
+	/**
+	 * Drops every count if they were counted before today.
+	 */
+	private void resetIfNewDay()
+	{
+		long today = DateUpdater.getInstance().getDay();
+		if (day != today)
+		{
+			plays.clear();
+			day = today;
+		}
+	}
+}
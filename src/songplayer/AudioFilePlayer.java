@@ -12,7 +12,6 @@ package src.songplayer;
 import java.awt.EventQueue;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.ArrayList;
@@ -24,8 +23,14 @@ import javax.sound.sampled.DataLine;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
 public class AudioFilePlayer extends Thread {
 
+	// how long opening a line takes, shared with the PlaybackEngine
+	private static final LatencyHistogram LINE_OPEN_TIMES = Metrics.getInstance().histogram("playback.lineOpen");
+
 	private String fileName;
 
 	private ArrayList<EndOfSongListener> listeners = new ArrayList<EndOfSongListener>();
@@ -107,13 +112,8 @@ public class AudioFilePlayer extends Thread {
 				for (EndOfSongListener listener : listeners) {
 					EndOfSongEvent eose = new EndOfSongEvent(fileName, LocalDate.now(), LocalTime.now());
 					if (!EventQueue.isDispatchThread()) {
-						try {
-							EventQueue.invokeAndWait(new EDTListener(eose, listener));
-						} catch (InvocationTargetException e) {
-							e.printStackTrace();
-						} catch (InterruptedException e) {
-							e.printStackTrace();
-						}
+						// post without waiting, so this thread is never held up by the UI
+						EventQueue.invokeLater(new EDTListener(eose, listener));
 					} else {
 						listener.songFinishedPlaying(eose);
 					}
@@ -126,9 +126,11 @@ public class AudioFilePlayer extends Thread {
 
 	private SourceDataLine getLine(AudioFormat audioFormat) throws LineUnavailableException {
 		SourceDataLine res = null;
+		long start = System.nanoTime();
 		DataLine.Info info = new DataLine.Info(SourceDataLine.class, audioFormat);
 		res = (SourceDataLine) AudioSystem.getLine(info);
 		res.open(audioFormat);
+		LINE_OPEN_TIMES.recordSince(start);
 		return res;
 	}
 
@@ -0,0 +1,236 @@
+package src.songplayer;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Holds the decoded audio of recently played files in direct buffers, outside
+ * the heap, so a file played again does not have to be decoded again. The
+ * cache is bounded by the total bytes it holds; the least recently played
+ * files are dropped first to make room.
+ *
+ * Files are keyed by path and last modified time, so a file that is replaced
+ * on disk is decoded again.
+ *
+ * @author Taylor Heimbichner
+ */
+public class PcmCache {
+
+	// the default bound, about 25 minutes of CD audio
+	public static final long DEFAULT_CAPACITY = 256L << 20;
+
+	private long capacity;
+
+	// total bytes of decoded audio held
+	private long bytes = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	// entries by key, least recently used first
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	/**
+	 * Creates an empty cache that holds up to capacity bytes.
+	 */
+	public PcmCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the key the given file is cached under.
+	 */
+	public static String keyFor(String fileName) {
+		File file = new File(fileName);
+		return file.getAbsolutePath() + "@" + file.lastModified();
+	}
+
+	/**
+	 * Returns the cached audio for the key, or null if it is not cached. Each
+	 * call counts as a hit or a miss.
+	 */
+	public synchronized Entry get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns true if audio of the given length could be cached. Files larger
+	 * than a quarter of the cache are not kept, so one long file cannot empty it.
+	 */
+	public synchronized boolean fits(long length) {
+		return length <= capacity / 4;
+	}
+
+	/**
+	 * Caches a copy of the decoded audio in data, dropping the least recently
+	 * used files until it fits.
+	 *
+	 * @param key
+	 *            The key returned by keyFor().
+	 * @param format
+	 *            The format the audio was decoded to.
+	 * @param data
+	 *            The decoded audio, the first length bytes are cached.
+	 */
+	public void put(String key, AudioFormat format, byte[] data, int length) {
+		if (!fits(length)) {
+			return;
+		}
+		// copy outside the lock, allocating a large direct buffer is slow
+		ByteBuffer pcm = ByteBuffer.allocateDirect(length);
+		pcm.put(data, 0, length);
+		pcm.flip();
+		Entry entry = new Entry(format, pcm.asReadOnlyBuffer());
+
+		synchronized (this) {
+			Entry old = entries.put(key, entry);
+			if (old != null) {
+				bytes -= old.getLength();
+			}
+			bytes += length;
+			evict();
+		}
+	}
+
+	/**
+	 * Sets the most bytes the cache may hold, dropping files if it holds more.
+	 */
+	public synchronized void setCapacity(long capacity) {
+		this.capacity = capacity;
+		evict();
+	}
+
+	/**
+	 * Drops every cached file.
+	 */
+	public synchronized void clear() {
+		evictions += entries.size();
+		entries.clear();
+		bytes = 0;
+	}
+
+	// Drops least recently used files until the cache is within capacity
+	private void evict() {
+		Iterator<Entry> it = entries.values().iterator();
+		while (bytes > capacity && it.hasNext()) {
+			bytes -= it.next().getLength();
+			it.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized long getCapacity() {
+		return capacity;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "PcmCache[" + entries.size() + " files, " + bytes + "/" + capacity + " bytes, " + hits + " hits, "
+				+ misses + " misses, " + evictions + " evictions]";
+	}
+
+	/**
+	 * The decoded audio of one file.
+	 */
+	public static class Entry {
+
+		private final AudioFormat format;
+		private final ByteBuffer pcm;
+
+		private Entry(AudioFormat format, ByteBuffer pcm) {
+			this.format = format;
+			this.pcm = pcm;
+		}
+
+		public AudioFormat getFormat() {
+			return format;
+		}
+
+		/**
+		 * Returns a new read-only view of the audio, positioned at its start, that
+		 * the caller may read from without affecting other readers.
+		 */
+		public ByteBuffer getPcm() {
+			return pcm.duplicate();
+		}
+
+		public int getLength() {
+			return pcm.capacity();
+		}
+	}
+
+	/**
+	 * Collects decoded audio while a file is decoded, giving up once there is
+	 * more than the cache would keep.
+	 */
+	static class Collector {
+
+		private byte[] data = new byte[1 << 16];
+		private int length = 0;
+		private final long limit;
+
+		Collector(long limit) {
+			this.limit = limit;
+		}
+
+		void add(byte[] b, int off, int len) {
+			if (data == null) {
+				return;
+			}
+			if (length + (long) len > limit) {
+				data = null;
+				return;
+			}
+			if (length + len > data.length) {
+				byte[] grown = new byte[(int) Math.min(limit, Math.max(length + len, (long) data.length * 2))];
+				System.arraycopy(data, 0, grown, 0, length);
+				data = grown;
+			}
+			System.arraycopy(b, off, data, length, len);
+			length += len;
+		}
+
+		boolean isComplete() {
+			return data != null;
+		}
+
+		byte[] getData() {
+			return data;
+		}
+
+		int getLength() {
+			return length;
+		}
+	}
+}
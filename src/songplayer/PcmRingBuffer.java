@@ -0,0 +1,74 @@
+package src.songplayer;
+
+/**
+ * A fixed-size circular buffer of decoded audio, written by one thread and
+ * read by another. write() blocks while the buffer is full and read() blocks
+ * while it is empty, so a decoder can run ahead of playback by at most the
+ * size of the buffer.
+ *
+ * @author Taylor Heimbichner
+ */
+public class PcmRingBuffer {
+
+	private final byte[] data;
+
+	// the position of the next byte to read, and the number of bytes stored
+	private int head = 0;
+	private int count = 0;
+
+	// true once the writer has written everything
+	private boolean closed = false;
+
+	/**
+	 * Creates an empty buffer that holds up to capacity bytes.
+	 */
+	public PcmRingBuffer(int capacity) {
+		data = new byte[capacity];
+	}
+
+	/**
+	 * Appends len bytes of b, waiting for room as needed.
+	 */
+	public synchronized void write(byte[] b, int off, int len) throws InterruptedException {
+		while (len > 0) {
+			while (count == data.length) {
+				wait();
+			}
+			int tail = (head + count) % data.length;
+			int n = Math.min(len, Math.min(data.length - count, data.length - tail));
+			System.arraycopy(b, off, data, tail, n);
+			count += n;
+			off += n;
+			len -= n;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Reads up to len bytes into b, waiting until at least one is available.
+	 *
+	 * @return The number of bytes read, or -1 if the buffer is closed and empty.
+	 */
+	public synchronized int read(byte[] b, int off, int len) throws InterruptedException {
+		while (count == 0 && !closed) {
+			wait();
+		}
+		if (count == 0) {
+			return -1;
+		}
+		int n = Math.min(len, Math.min(count, data.length - head));
+		System.arraycopy(data, head, b, off, n);
+		head = (head + n) % data.length;
+		count -= n;
+		notifyAll();
+		return n;
+	}
+
+	/**
+	 * Marks the end of the data. Readers get -1 once the buffer is empty.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+}
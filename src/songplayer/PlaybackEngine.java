@@ -0,0 +1,380 @@
+package src.songplayer;
+
+import java.awt.EventQueue;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/**
+ * Plays audio files one after another using two long-lived threads. Unlike
+ * SongPlayer, which starts a new AudioFilePlayer thread and opens a new
+ * SourceDataLine for every file, the engine keeps the lines it has opened,
+ * one per audio format, and reuses them for later files in the same format.
+ *
+ * A decoder thread decodes each submitted file into a PcmRingBuffer while the
+ * player thread writes the previous file to its line, so the next file is
+ * already decoding before the current one ends. When the next file is ready
+ * and has the same format, its audio is written to the same line right after
+ * the current file's, with no drain and no silence in between, unless an
+ * inter-song delay has been set.
+ *
+ * Decoded audio is kept in a PcmCache, so a file played again recently is
+ * played straight from the cache without being decoded.
+ *
+ * Files are submitted with play() and are played in the order submitted. Each
+ * file's EndOfSongListener is notified on the event dispatch thread, or by the
+ * listener executor if one is set, once it has finished, or failed, to play.
+ * With an executor set the engine never loads the AWT toolkit, so it can run
+ * on a headless server. The player does not wait for the listener, and
+ * the inter-song delay is spent on the player thread, so the event dispatch
+ * thread is never held up between songs.
+ *
+ * The time taken to decode each file and to open each line, and the silence
+ * between files, are recorded as the metrics playback.decode,
+ * playback.lineOpen and playback.gap.
+ *
+ * @author Taylor Heimbichner
+ */
+public class PlaybackEngine {
+
+	// the most lines kept open at once, the least recently used is closed first
+	private static final int MAX_OPEN_LINES = 4;
+
+	// bytes of decoded audio each file may get ahead of playback, about 1.5 s of CD audio
+	private static final int LOOK_AHEAD_BYTES = 1 << 18;
+
+	// how long decoding each file takes, not counting waits for the player to
+	// make room, how long opening a line takes, and the silence between files
+	private static final LatencyHistogram DECODE_TIMES = Metrics.getInstance().histogram("playback.decode");
+	private static final LatencyHistogram LINE_OPEN_TIMES = Metrics.getInstance().histogram("playback.lineOpen");
+	private static final LatencyHistogram GAPS = Metrics.getInstance().histogram("playback.gap");
+
+	private static final PlaybackEngine instance = new PlaybackEngine();
+
+	// decoded audio of recently played files
+	private final PcmCache cache = new PcmCache(PcmCache.DEFAULT_CAPACITY);
+
+	// files waiting to be decoded
+	private final BlockingQueue<Request> requests = new LinkedBlockingQueue<Request>();
+
+	// files being decoded or decoded, waiting to be played
+	private final BlockingQueue<Request> decoded = new LinkedBlockingQueue<Request>();
+
+	// open lines by audio format, only used by the player thread
+	private final Map<String, SourceDataLine> lines = new LinkedHashMap<String, SourceDataLine>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SourceDataLine> eldest) {
+			if (size() > MAX_OPEN_LINES) {
+				eldest.getValue().close();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	// runs listeners instead of the event dispatch thread, if set
+	private volatile Executor listenerExecutor;
+
+	// silence to leave between files, in milliseconds
+	private volatile long interSongDelay = 0;
+
+	// when the last byte of the last file was written, in System.nanoTime() units
+	private long lastEndNanos = -1;
+
+	// the silence between the last two files, in nanoseconds, or -1 if not yet known
+	private volatile long lastGapNanos = -1;
+
+	private PlaybackEngine() {
+		Thread decoder = new Thread(this::decodeLoop, "Playback decoder");
+		decoder.setDaemon(true);
+		decoder.start();
+		Thread player = new Thread(this::playLoop, "Playback engine");
+		player.setDaemon(true);
+		player.start();
+	}
+
+	/**
+	 * Returns the single instance of PlaybackEngine.
+	 */
+	public static PlaybackEngine getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Queues a file to be played after every file submitted before it. Submitting
+	 * the next file while the current one plays lets it start without a gap.
+	 *
+	 * @param audioFileName
+	 *            The name of the file to be written to your output device.
+	 * @param listener
+	 *            Notified when the file has finished playing, may be null.
+	 */
+	public void play(String audioFileName, EndOfSongListener listener) {
+		requests.add(new Request(audioFileName, listener));
+	}
+
+	/**
+	 * Sets the silence left between consecutive files.
+	 *
+	 * @param millis
+	 *            The delay in milliseconds, 0 for gapless playback.
+	 */
+	public void setInterSongDelay(long millis) {
+		interSongDelay = millis;
+	}
+
+	/**
+	 * Sets the executor that notifies EndOfSongListeners, or null to notify them
+	 * on the event dispatch thread.
+	 */
+	public void setListenerExecutor(Executor executor) {
+		listenerExecutor = executor;
+	}
+
+	/**
+	 * Returns the cache of decoded audio, for its statistics and to change its
+	 * capacity.
+	 */
+	public PcmCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Returns the time between the end of one file and the first sound of the
+	 * next, for the last two files played, or -1 if fewer than two have played.
+	 * This includes the inter-song delay and any time the client took to submit
+	 * the next file.
+	 */
+	public double getLastGapMillis() {
+		long gap = lastGapNanos;
+		return gap < 0 ? -1 : gap / 1e6;
+	}
+
+	// Decodes requests, one at a time, in the order they were submitted
+	private void decodeLoop() {
+		while (true) {
+			try {
+				Request request = requests.take();
+				decode(request);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Decodes the file to 16 bit PCM in the request's buffer, handing the request
+	 * to the player as soon as its format is known. If the file's audio is cached
+	 * the request is handed to the player with the cached audio instead.
+	 */
+	private void decode(Request request) throws InterruptedException {
+		String key = PcmCache.keyFor(request.fileName);
+		PcmCache.Entry entry = cache.get(key);
+		if (entry != null) {
+			request.cached = entry.getPcm();
+			request.format = entry.getFormat();
+			request.buffer.close();
+			decoded.add(request);
+			return;
+		}
+
+		PcmCache.Collector collector = new PcmCache.Collector(cache.getCapacity() / 4);
+		long start = System.nanoTime();
+		// nanoseconds spent waiting for the player to make room in the buffer
+		long waited = 0;
+		try (AudioInputStream in = AudioSystem.getAudioInputStream(new File(request.fileName))) {
+			AudioFormat baseFormat = in.getFormat();
+			AudioFormat decodedFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, baseFormat.getSampleRate(),
+					16, baseFormat.getChannels(), baseFormat.getChannels() * 2, baseFormat.getSampleRate(), false);
+
+			try (AudioInputStream din = AudioSystem.getAudioInputStream(decodedFormat, in)) {
+				request.format = decodedFormat;
+				decoded.add(request);
+				byte[] data = new byte[4096];
+				int nBytesRead = din.read(data, 0, data.length);
+				while (nBytesRead != -1) {
+					long writing = System.nanoTime();
+					request.buffer.write(data, 0, nBytesRead);
+					waited += System.nanoTime() - writing;
+					collector.add(data, 0, nBytesRead);
+					nBytesRead = din.read(data, 0, data.length);
+				}
+			}
+			DECODE_TIMES.record(System.nanoTime() - start - waited);
+			if (collector.isComplete()) {
+				cache.put(key, request.format, collector.getData(), collector.getLength());
+			}
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			System.out.println(e);
+		} finally {
+			request.buffer.close();
+			if (request.format == null) {
+				// nothing to play, but the player still notifies the listener
+				decoded.add(request);
+			}
+		}
+	}
+
+	// Plays decoded requests forever
+	private void playLoop() {
+		try {
+			Request current = decoded.take();
+			while (true) {
+				SourceDataLine line = write(current);
+				Request next = decoded.poll();
+				boolean delay = interSongDelay > 0;
+				if (line != null && (next == null || delay || !sameFormat(current, next))) {
+					line.drain();
+				}
+				notifyListener(current);
+				if (delay) {
+					Thread.sleep(interSongDelay);
+				}
+				current = (next != null) ? next : decoded.take();
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes all of the request's decoded audio to a line for its format.
+	 *
+	 * @return The line written to, or null if nothing could be played.
+	 */
+	private SourceDataLine write(Request request) throws InterruptedException {
+		SourceDataLine line = null;
+		try {
+			if (request.format != null) {
+				line = getLine(request.format);
+			}
+		} catch (LineUnavailableException | IllegalArgumentException e) {
+			System.out.println(e);
+		}
+
+		if (line != null) {
+			line.start();
+		}
+		byte[] data = new byte[4096];
+		boolean first = true;
+		int nBytesRead = request.read(data);
+		while (nBytesRead != -1) {
+			if (line != null) {
+				line.write(data, 0, nBytesRead);
+				if (first && lastEndNanos >= 0) {
+					lastGapNanos = System.nanoTime() - lastEndNanos;
+					GAPS.record(lastGapNanos);
+				}
+				first = false;
+			}
+			nBytesRead = request.read(data);
+		}
+		if (line != null) {
+			lastEndNanos = System.nanoTime();
+		}
+		return line;
+	}
+
+	/**
+	 * Returns true if both requests decode to the same format.
+	 */
+	private static boolean sameFormat(Request a, Request b) {
+		return a.format != null && b.format != null && a.format.toString().equals(b.format.toString());
+	}
+
+	/**
+	 * Returns an open line for the given format, opening one only if no line
+	 * for the format is open already.
+	 */
+	private SourceDataLine getLine(AudioFormat audioFormat) throws LineUnavailableException {
+		String key = audioFormat.toString();
+		SourceDataLine line = lines.get(key);
+		if (line == null || !line.isOpen()) {
+			long start = System.nanoTime();
+			DataLine.Info info = new DataLine.Info(SourceDataLine.class, audioFormat);
+			line = (SourceDataLine) AudioSystem.getLine(info);
+			line.open(audioFormat);
+			LINE_OPEN_TIMES.recordSince(start);
+			lines.put(key, line);
+		}
+		return line;
+	}
+
+	/**
+	 * Posts an EndOfSongEvent to the request's listener on the event dispatch
+	 * thread or the listener executor, without waiting for it to be handled.
+	 */
+	private void notifyListener(Request request) {
+		if (request.listener == null) {
+			return;
+		}
+		EndOfSongEvent eose = new EndOfSongEvent(request.fileName, LocalDate.now(), LocalTime.now());
+		Runnable notify = () -> request.listener.songFinishedPlaying(eose);
+		Executor executor = listenerExecutor;
+		if (executor == null) {
+			EventQueue.invokeLater(notify);
+		} else {
+			executor.execute(notify);
+		}
+	}
+
+	/**
+	 * A file waiting to be played, its decoded audio and the listener to notify
+	 * when it is done.
+	 */
+	private static class Request {
+
+		private final String fileName;
+		private final EndOfSongListener listener;
+		private final PcmRingBuffer buffer = new PcmRingBuffer(LOOK_AHEAD_BYTES);
+
+		// the decoded format, set by the decoder, null if the file could not be decoded
+		private volatile AudioFormat format;
+
+		// the cached audio, set by the decoder instead of filling the buffer
+		private volatile ByteBuffer cached;
+
+		public Request(String fileName, EndOfSongListener listener) {
+			this.fileName = fileName;
+			this.listener = listener;
+		}
+
+		/**
+		 * Reads the next decoded audio into data, from the cache or the buffer.
+		 *
+		 * @return The number of bytes read, or -1 at the end of the audio.
+		 */
+		public int read(byte[] data) throws InterruptedException {
+			if (cached == null) {
+				return buffer.read(data, 0, data.length);
+			}
+			if (!cached.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(data.length, cached.remaining());
+			cached.get(data, 0, n);
+			return n;
+		}
+	}
+}
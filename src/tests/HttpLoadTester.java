@@ -0,0 +1,160 @@
+package tests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends many concurrent requests to a running JukeboxServer and reports how
+ * quickly they were answered. Not a unit test: start a server, then run
+ * 
+ * java tests.HttpLoadTester [url] [concurrent requests] [total requests]
+ * 
+ * The url defaults to http://localhost:8080. Most requests search the library
+ * or read the queue; one in ten asks to play a song, which is usually refused
+ * once the account runs out of plays.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class HttpLoadTester
+{
+	public static void main(String[] args) throws Exception
+	{
+		String url = (args.length > 0) ? args[0] : "http://localhost:8080";
+		int concurrency = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+		int total = (args.length > 2) ? Integer.parseInt(args[2]) : 100000;
+		
+		String login = send(url + "/login", "user=Chris&pass=1").body;
+		String token = login.replaceAll(".*\"token\":\"([^\"]*)\".*", "$1");
+		
+		// each client thread takes the next request number until all are sent
+		AtomicInteger next = new AtomicInteger();
+		long[] latencies = new long[total];
+		Map<Integer, AtomicInteger> statuses = new TreeMap<Integer, AtomicInteger>();
+		AtomicInteger failures = new AtomicInteger();
+		CountDownLatch ready = new CountDownLatch(concurrency);
+		CountDownLatch go = new CountDownLatch(1);
+		List<Thread> clients = new ArrayList<Thread>();
+		for (int c = 0; c < concurrency; c++)
+		{
+			Thread client = new Thread(() ->
+			{
+				ready.countDown();
+				try
+				{
+					go.await();
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				for (int i = next.getAndIncrement(); i < total; i = next.getAndIncrement())
+				{
+					long sent = System.nanoTime();
+					try
+					{
+						Response response;
+						if (i % 10 == 0)
+						{
+							response = send(url + "/queue", "token=" + token + "&song=" + encode("Tada"));
+						}
+						else if (i % 2 == 0)
+						{
+							response = send(url + "/songs?q=" + encode("kevin"), null);
+						}
+						else
+						{
+							response = send(url + "/queue", null);
+						}
+						synchronized (statuses)
+						{
+							statuses.computeIfAbsent(response.status, k -> new AtomicInteger()).incrementAndGet();
+						}
+					}
+					catch (IOException e)
+					{
+						failures.incrementAndGet();
+					}
+					latencies[i] = System.nanoTime() - sent;
+				}
+			});
+			client.setDaemon(true);
+			client.start();
+			clients.add(client);
+		}
+		ready.await();
+		
+		long start = System.nanoTime();
+		go.countDown();
+		for (Thread client : clients)
+		{
+			client.join();
+		}
+		long elapsed = System.nanoTime() - start;
+		
+		Arrays.sort(latencies);
+		System.out.printf("%d requests, %d at a time, in %.2f s: %.0f requests/s%n", total, concurrency,
+				elapsed / 1e9, total / (elapsed / 1e9));
+		System.out.printf("latency ms: p50 %.2f, p99 %.2f, max %.2f%n", percentile(latencies, 0.50),
+				percentile(latencies, 0.99), latencies[total - 1] / 1e6);
+		System.out.println("responses by status: " + statuses + ", failed: " + failures.get());
+	}
+	
+	/**
+	 * Sends a GET request, or a form encoded POST request if form is not null,
+	 * reading the whole response so the connection can be reused.
+	 */
+	private static Response send(String url, String form) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		if (form != null)
+		{
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			try (OutputStream out = connection.getOutputStream())
+			{
+				out.write(form.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		Response response = new Response();
+		response.status = connection.getResponseCode();
+		InputStream in = (response.status < 400) ? connection.getInputStream() : connection.getErrorStream();
+		try (InputStream body = in)
+		{
+			response.body = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		return response;
+	}
+	
+	private static String encode(String s)
+	{
+		return URLEncoder.encode(s, StandardCharsets.UTF_8);
+	}
+	
+	// Returns the given fraction of sorted nanosecond latencies in milliseconds
+	private static double percentile(long[] sorted, double fraction)
+	{
+		return sorted[(int) Math.min(sorted.length - 1, fraction * sorted.length)] / 1e6;
+	}
+	
+	/**
+	 * A response's status and body.
+	 */
+	private static class Response
+	{
+		private int status;
+		private String body;
+	}
+}
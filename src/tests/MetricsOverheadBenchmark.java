@@ -0,0 +1,98 @@
+package tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.LongConsumer;
+
+import metrics.Counter;
+import metrics.LatencyHistogram;
+
+/**
+ * Has several threads record events as fast as they can, and reports how many
+ * nanoseconds each event cost: counting it, recording a time in a histogram,
+ * reading System.nanoTime() alone, and timing it with two reads of
+ * System.nanoTime() as the instrumented code does. The cost of the loop
+ * itself, found by running it with nothing to record, is taken off. Not a
+ * unit test: run
+ * 
+ * java tests.MetricsOverheadBenchmark [threads] [events per thread]
+ * 
+ * The defaults are one thread for each processor and twenty million events each.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class MetricsOverheadBenchmark
+{
+	// the rounds run of each kind, the first ones warming up
+	private static final int ROUNDS = 5;
+	
+	// keeps the loops from being optimized away
+	private static volatile long sink;
+	
+	public static void main(String[] args) throws Exception
+	{
+		int threadCount = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int events = (args.length > 1) ? Integer.parseInt(args[1]) : 20000000;
+		
+		Counter counter = new Counter();
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int round = 1; round <= ROUNDS; round++)
+		{
+			double loop = run(threadCount, events, value -> sink = value);
+			double counted = run(threadCount, events, value -> counter.increment());
+			// times spread over many buckets, from 0 to about 1 ms
+			double recorded = run(threadCount, events, value -> histogram.record(value & 0xfffff));
+			double clock = run(threadCount, events, value -> sink = System.nanoTime());
+			double timed = run(threadCount, events, value -> histogram.recordSince(System.nanoTime()));
+			System.out.printf("round %d: loop %.1f ns, counter %.1f ns, histogram %.1f ns, clock %.1f ns, timed histogram %.1f ns%n",
+					round, loop, counted - loop, recorded - loop, clock - loop, timed - loop);
+		}
+		System.out.printf("counted %d, recorded %d%n", counter.getCount(), histogram.getCount());
+	}
+	
+	/**
+	 * Has the threads each pass the given number of values to the event, and
+	 * returns the nanoseconds each thread took for each event.
+	 */
+	private static double run(int threadCount, int events, LongConsumer event) throws InterruptedException
+	{
+		CountDownLatch ready = new CountDownLatch(threadCount);
+		CountDownLatch go = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < threadCount; t++)
+		{
+			Thread thread = new Thread(() ->
+			{
+				ready.countDown();
+				try
+				{
+					go.await();
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				// a cheap spread of values, different on each thread
+				long value = System.identityHashCode(Thread.currentThread());
+				for (int i = 0; i < events; i++)
+				{
+					value = value * 6364136223846793005L + 1442695040888963407L;
+					event.accept(value >>> 20);
+				}
+			}, "Recorder " + t);
+			thread.start();
+			threads.add(thread);
+		}
+		ready.await();
+		long start = System.nanoTime();
+		go.countDown();
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		// each thread's share of the processors, if there are more threads
+		double share = Math.min(1.0, (double) Runtime.getRuntime().availableProcessors() / threadCount);
+		return (System.nanoTime() - start) * share / events;
+	}
+}
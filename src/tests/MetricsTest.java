@@ -0,0 +1,90 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/**
+ * A unit test for latency histograms and the metrics shown over JMX.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class MetricsTest
+{
+	@Test
+	public void testPercentiles()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getMedianMillis(), 0);
+		
+		// 1 to 1000 microseconds, once each
+		for (int micros = 1; micros <= 1000; micros++)
+		{
+			histogram.record(micros * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(0.5005, histogram.getMeanMillis(), 1e-9);
+		// each percentile is at least the time recorded and at most 1/32 more
+		double[][] expected = { { 50, 0.5 }, { 90, 0.9 }, { 99, 0.99 }, { 99.9, 0.999 }, { 100, 1 } };
+		for (double[] percentile : expected)
+		{
+			double millis = histogram.getPercentileMillis(percentile[0]);
+			if (millis < percentile[1] || millis > percentile[1] * 33 / 32)
+			{
+				fail(percentile[0] + "th percentile was " + millis + " ms, not about " + percentile[1]);
+			}
+		}
+		
+		// short times are exact, negative ones are 0 and very long ones are kept
+		LatencyHistogram edges = new LatencyHistogram();
+		edges.record(-5);
+		edges.record(7);
+		edges.record(Long.MAX_VALUE);
+		assertEquals(0, edges.getPercentileMillis(0), 0);
+		assertEquals(7e-6, edges.getMedianMillis(), 0);
+		if (edges.getMaxMillis() < 19 * 60 * 60 * 1000.0)
+		{
+			fail("A very long time was counted as " + edges.getMaxMillis() + " ms");
+		}
+	}
+	
+	@Test
+	public void testRegistry() throws Exception
+	{
+		Metrics metrics = Metrics.getInstance();
+		Counter counter = metrics.counter("test.events");
+		assertSame(counter, metrics.counter("test.events"));
+		counter.add(3);
+		counter.increment();
+		try
+		{
+			metrics.histogram("test.events");
+			fail("A counter was returned as a histogram");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+		
+		// every kind of metric can be read over JMX
+		metrics.histogram("test.times").record(2000000);
+		int[] length = { 5 };
+		metrics.gauge("test.length", () -> length[0]);
+		length[0] = 6;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertEquals(4L, server.getAttribute(new ObjectName("jukebox:type=Counter,name=test.events"), "Count"));
+		assertEquals(1L, server.getAttribute(new ObjectName("jukebox:type=LatencyHistogram,name=test.times"), "Count"));
+		assertEquals(6L, server.getAttribute(new ObjectName("jukebox:type=Gauge,name=test.length"), "Value"));
+	}
+}
@@ -0,0 +1,137 @@
+package tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import controller.PlayResult;
+import controller.SongController;
+import model.JukeboxAccount;
+import model.ReadableSongQueue;
+import model.Song;
+import model.SongPlayCounts;
+
+/**
+ * Has thousands of threads ask one SongController for songs at once, for a few
+ * users and songs, and reports how many requests were answered a second and
+ * whether any limit was overspent. Not a unit test: run
+ * 
+ * java tests.QuotaContentionBenchmark [threads] [requests per thread] [users] [songs] [locked]
+ * 
+ * The defaults are 4000 threads making 250 requests each for 200 users and 50
+ * songs. Given "locked", every request is made holding one lock, as requests
+ * were before plays were reserved, for comparison.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class QuotaContentionBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		int threadCount = (args.length > 0) ? Integer.parseInt(args[0]) : 4000;
+		int requests = (args.length > 1) ? Integer.parseInt(args[1]) : 250;
+		int userCount = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+		int songCount = (args.length > 3) ? Integer.parseInt(args[3]) : 50;
+		boolean locked = args.length > 4 && args[4].equals("locked");
+		
+		ReadableSongQueue queue = new ReadableSongQueue(false);
+		SongController controller = new SongController(queue, (song, listener) -> {}, SongPlayCounts.SHARED);
+		// every request reaches the daily limits
+		controller.getAdmissionControl().setUserRate(0, 0);
+		controller.getAdmissionControl().setGlobalRate(0, 0);
+		controller.getAdmissionControl().setMaxQueuedSongs(Integer.MAX_VALUE);
+		controller.getAdmissionControl().setMaxWaitSeconds(Long.MAX_VALUE);
+		JukeboxAccount[] users = new JukeboxAccount[userCount];
+		for (int i = 0; i < userCount; i++)
+		{
+			users[i] = new JukeboxAccount("user" + i, new char[] {'1'});
+		}
+		// long enough that some users run out of time before they run out of plays
+		Song[] songs = new Song[songCount];
+		for (int i = 0; i < songCount; i++)
+		{
+			songs[i] = new Song("Song " + i, "song" + i + ".wav", 20000 + i * 500, "Benchmark");
+		}
+		
+		Object lock = new Object();
+		AtomicInteger played = new AtomicInteger();
+		CountDownLatch ready = new CountDownLatch(threadCount);
+		CountDownLatch go = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < threadCount; t++)
+		{
+			Thread thread = new Thread(() ->
+			{
+				ready.countDown();
+				try
+				{
+					go.await();
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < requests; i++)
+				{
+					JukeboxAccount user = users[random.nextInt(userCount)];
+					Song song = songs[random.nextInt(songCount)];
+					PlayResult result;
+					if (locked)
+					{
+						synchronized (lock)
+						{
+							result = controller.requestSong(user, song);
+						}
+					}
+					else
+					{
+						result = controller.requestSong(user, song);
+					}
+					if (result == PlayResult.PLAYED)
+					{
+						played.incrementAndGet();
+					}
+				}
+			}, "Requester " + t);
+			thread.start();
+			threads.add(thread);
+		}
+		ready.await();
+		long start = System.nanoTime();
+		go.countDown();
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		
+		// no user, song or queue may disagree with the plays that were allowed
+		int userPlays = 0;
+		int songPlays = 0;
+		int overspent = 0;
+		for (JukeboxAccount user : users)
+		{
+			userPlays += user.getTimesPlayed();
+			if (user.getTimesPlayed() > 3 || user.getTime() < 0)
+			{
+				overspent++;
+			}
+		}
+		for (Song song : songs)
+		{
+			songPlays += song.getTimesPlayed();
+			if (song.getTimesPlayed() > 3)
+			{
+				overspent++;
+			}
+		}
+		long total = (long) threadCount * requests;
+		System.out.printf("%s: %d requests from %d threads in %.2f s, %.0f requests/s%n",
+				locked ? "locked" : "reserved", total, threadCount, seconds, total / seconds);
+		System.out.printf("played %d, user plays %d, song plays %d, queued %d, overspent %d%n",
+				played.get(), userPlays, songPlays, queue.getSongCount(), overspent);
+	}
+}
@@ -0,0 +1,169 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import model.ReadableSongQueue;
+import model.Song;
+import model.SongQueueListener;
+import view.SongQueueListModel;
+
+/**
+ * A unit test for using a ReadableSongQueue from many threads at once.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class ReadableSongQueueTest
+{
+	private static final int PRODUCERS = 8;
+	private static final int SONGS_PER_PRODUCER = 5000;
+	
+	@Test
+	public void testConcurrentEnqueue() throws Exception
+	{
+		ReadableSongQueue queue = new ReadableSongQueue();
+		SongQueueListModel view = new SongQueueListModel(queue);
+		
+		// each producer's songs are named by producer and position
+		List<Song[]> songs = new ArrayList<Song[]>();
+		for (int p = 0; p < PRODUCERS; p++)
+		{
+			Song[] mine = new Song[SONGS_PER_PRODUCER];
+			for (int i = 0; i < SONGS_PER_PRODUCER; i++)
+			{
+				mine[i] = new Song(p + ":" + i, "tada.wav", 2, "Microsoft");
+			}
+			songs.add(mine);
+		}
+		
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> producers = new ArrayList<Thread>();
+		for (Song[] mine : songs)
+		{
+			Thread producer = new Thread(() ->
+			{
+				try
+				{
+					start.await();
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				for (Song song : mine)
+				{
+					queue.addToQueue(song);
+				}
+			});
+			producer.start();
+			producers.add(producer);
+		}
+		
+		// a consumer removes songs while they are added, checking each producer's
+		// songs come out in the order that producer added them
+		int[] next = new int[PRODUCERS];
+		int removed = 0;
+		start.countDown();
+		while (removed < PRODUCERS * SONGS_PER_PRODUCER / 2)
+		{
+			if (queue.peekAtQueue() != null)
+			{
+				String[] name = queue.removeFromQueue().getName().split(":");
+				int p = Integer.parseInt(name[0]);
+				assertEquals(next[p], Integer.parseInt(name[1]));
+				next[p]++;
+				removed++;
+			}
+		}
+		for (Thread producer : producers)
+		{
+			producer.join();
+		}
+		
+		int remaining = PRODUCERS * SONGS_PER_PRODUCER - removed;
+		assertEquals(remaining, queue.getSongCount());
+		for (int i = 0; i < remaining; i++)
+		{
+			String[] name = queue.getSong(i).getName().split(":");
+			int p = Integer.parseInt(name[0]);
+			assertEquals(next[p], Integer.parseInt(name[1]));
+			next[p]++;
+		}
+		for (int p = 0; p < PRODUCERS; p++)
+		{
+			assertEquals(SONGS_PER_PRODUCER, next[p]);
+		}
+		
+		// once notified, the view matches the queue
+		EventQueue.invokeAndWait(() -> {});
+		EventQueue.invokeAndWait(() -> {});
+		assertEquals(remaining, view.getSize());
+		for (int i = 0; i < remaining; i++)
+		{
+			assertSame(queue.getSong(i), view.getElementAt(i));
+		}
+	}
+	
+	@Test
+	public void testAddAllToQueue() throws Exception
+	{
+		ReadableSongQueue queue = new ReadableSongQueue(false);
+		List<Integer> added = new ArrayList<Integer>();
+		queue.addSongQueueListener(new SongQueueListener()
+		{
+			@Override
+			public void songsAdded(ReadableSongQueue queue, int count)
+			{
+				added.add(count);
+			}
+			
+			@Override
+			public void songRemoved(ReadableSongQueue queue)
+			{
+			}
+			
+			@Override
+			public void songsReplaced(ReadableSongQueue queue)
+			{
+			}
+		});
+		
+		// enough songs that the queue grows more than once
+		List<Song> songs = new ArrayList<Song>();
+		for (int i = 0; i < 100; i++)
+		{
+			songs.add(new Song("Batched " + i, "tada.wav", 2, "Microsoft"));
+		}
+		queue.addToQueue(songs.get(0));
+		queue.addAllToQueue(songs.subList(1, 100));
+		assertEquals(Arrays.asList(1, 99), added);
+		assertEquals(100, queue.getSongCount());
+		assertEquals(200, queue.getQueuedSeconds());
+		for (int i = 0; i < 100; i++)
+		{
+			assertSame(songs.get(i), queue.getSong(i));
+		}
+		
+		// a null song adds nothing
+		try
+		{
+			queue.addAllToQueue(Arrays.asList(songs.get(0), null));
+			fail("a null song should not be queued");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+		assertEquals(100, queue.getSongCount());
+		assertEquals(2, added.size());
+	}
+}
@@ -0,0 +1,255 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.EventQueue;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import controller.AdmissionControl;
+import controller.PlayResult;
+import controller.SongController;
+import model.JukeboxAccount;
+import model.ReadableSongQueue;
+import model.Song;
+import model.SongPlayCounts;
+import songplayer.EndOfSongEvent;
+import songplayer.EndOfSongListener;
+
+/**
+ * A unit test for playing the queue with a SongController.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class SongControllerTest
+{
+	// The longest the event dispatch thread may take to answer while songs play
+	private static final long MAX_LATENCY_MILLIS = 250;
+	
+	// How long each song holds the HoldingPlayer
+	private static final long SONG_MILLIS = 300;
+	
+	@Test
+	public void testEventThreadRespondsAcrossSongs() throws Exception
+	{
+		// songs that hold the player for a while, whether or not there is an audio line
+		ReadableSongQueue queue = new ReadableSongQueue();
+		HoldingPlayer player = new HoldingPlayer(SONG_MILLIS);
+		SongController controller = new SongController(queue, player, SongPlayCounts.SHARED);
+		try
+		{
+			long begin = System.nanoTime();
+			EventQueue.invokeAndWait(() ->
+			{
+				controller.addSong(new Song("Tada", "tada.wav", 2, "Microsoft"));
+				controller.addSong(new Song("Tada", "tada.wav", 2, "Microsoft"));
+				controller.addSong(new Song("Tada", "tada.wav", 2, "Microsoft"));
+			});
+			
+			// ping the event dispatch thread until every song has finished
+			AtomicInteger size = new AtomicInteger(queue.getSongCount());
+			long maxLatency = 0;
+			long deadline = System.currentTimeMillis() + 30000;
+			while (size.get() > 0 && System.currentTimeMillis() < deadline)
+			{
+				long start = System.nanoTime();
+				EventQueue.invokeAndWait(() -> size.set(queue.getSongCount()));
+				maxLatency = Math.max(maxLatency, (System.nanoTime() - start) / 1000000);
+				Thread.sleep(10);
+			}
+			
+			assertEquals(0, size.get());
+			assertTrue("songs were not held", (System.nanoTime() - begin) / 1000000 >= 3 * SONG_MILLIS);
+			assertTrue("event thread blocked for " + maxLatency + " ms", maxLatency < MAX_LATENCY_MILLIS);
+		}
+		finally
+		{
+			player.shutdown();
+		}
+	}
+	
+	@Test
+	public void testConcurrentRequestsShareLastPlay() throws Exception
+	{
+		ReadableSongQueue queue = new ReadableSongQueue(false);
+		SongController controller = new SongController(queue, (song, listener) -> {}, SongPlayCounts.SHARED);
+		Song song = new Song("Raced", "raced.wav", 60, "Racer");
+		JukeboxAccount first = new JukeboxAccount("First", new char[] {'1'});
+		JukeboxAccount second = new JukeboxAccount("Second", new char[] {'2'});
+		
+		// every thread asks at once, for one of two users, for the same song
+		AtomicInteger played = new AtomicInteger();
+		CountDownLatch go = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 64; i++)
+		{
+			JukeboxAccount user = (i % 2 == 0) ? first : second;
+			Thread thread = new Thread(() ->
+			{
+				try
+				{
+					go.await();
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				if (controller.requestSong(user, song) == PlayResult.PLAYED)
+				{
+					played.incrementAndGet();
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		go.countDown();
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		
+		assertEquals(3, played.get());
+		assertEquals(3, song.getTimesPlayed());
+		assertEquals(3, queue.getSongCount());
+		assertEquals(3, first.getTimesPlayed() + second.getTimesPlayed());
+		assertEquals(2 * 90000 - 3 * 60, first.getTime() + second.getTime());
+	}
+	
+	@Test
+	public void testRequestRolledBackWhenQueueFails()
+	{
+		ReadableSongQueue queue = new ReadableSongQueue(false)
+		{
+			@Override
+			public synchronized void addAllToQueue(List<Song> songs)
+			{
+				throw new IllegalStateException("queue is full");
+			}
+		};
+		SongController controller = new SongController(queue, (song, listener) -> {}, SongPlayCounts.SHARED);
+		Song song = new Song("Refused", "refused.wav", 60, "Racer");
+		JukeboxAccount user = new JukeboxAccount("Refused", new char[] {'1'});
+		try
+		{
+			controller.requestSong(user, song);
+			fail("the queue should have refused the song");
+		}
+		catch (IllegalStateException e)
+		{
+			// expected
+		}
+		assertEquals(0, song.getTimesPlayed());
+		assertEquals(0, user.getTimesPlayed());
+		assertEquals(90000, user.getTime());
+	}
+	
+	@Test
+	public void testAdmissionControl()
+	{
+		ReadableSongQueue queue = new ReadableSongQueue(false);
+		SongController controller = new SongController(queue, (song, listener) -> {}, SongPlayCounts.SHARED);
+		AdmissionControl admission = controller.getAdmissionControl();
+		JukeboxAccount user = new JukeboxAccount("Eager", new char[] {'1'});
+		Song first = new Song("First", "first.wav", 60, "Eager");
+		Song second = new Song("Second", "second.wav", 60, "Eager");
+		
+		// two requests at once, then one a minute
+		admission.setUserRate(1, 2);
+		assertEquals(PlayResult.PLAYED, controller.requestSong(user, first));
+		assertEquals(PlayResult.PLAYED, controller.requestSong(user, second));
+		assertEquals(PlayResult.RATE_LIMITED, controller.requestSong(user, first));
+		
+		// a refused request takes none of the user's plays
+		admission.setUserRate(0, 0);
+		admission.setMaxQueuedSongs(2);
+		assertEquals(PlayResult.QUEUE_FULL, controller.requestSong(user, first));
+		assertEquals(2, user.getTimesPlayed());
+		admission.setMaxQueuedSongs(3);
+		assertEquals(PlayResult.PLAYED, controller.requestSong(user, first));
+		
+		admission.setMaxQueuedSongs(500);
+		admission.setMaxWaitSeconds(180);
+		assertEquals(PlayResult.QUEUE_FULL, controller.requestSong(user, second));
+	}
+	
+	@Test
+	public void testRequestSongsAllOrNothing()
+	{
+		ReadableSongQueue queue = new ReadableSongQueue(false);
+		SongController controller = new SongController(queue, (song, listener) -> {}, SongPlayCounts.SHARED);
+		JukeboxAccount user = new JukeboxAccount("Batch", new char[] {'1'});
+		JukeboxAccount other = new JukeboxAccount("Other", new char[] {'1'});
+		Song first = new Song("Batch 1", "batch1.wav", 60, "Batcher");
+		Song second = new Song("Batch 2", "batch2.wav", 60, "Batcher");
+		
+		assertEquals(PlayResult.PLAYED, controller.requestSongs(user, Arrays.asList(first, second)));
+		assertEquals(2, queue.getSongCount());
+		assertSame(first, queue.getSong(0));
+		assertSame(second, queue.getSong(1));
+		assertEquals(90000 - 120, user.getTime());
+		
+		// one play left is not enough for two songs
+		assertEquals(PlayResult.USER_OUT_OF_PLAYS, controller.requestSongs(user, Arrays.asList(first, second)));
+		assertEquals(2, queue.getSongCount());
+		assertEquals(2, user.getTimesPlayed());
+		
+		// the second song runs out of plays partway through, so the first is given back
+		assertEquals(PlayResult.PLAYED, controller.requestSong(other, second));
+		JukeboxAccount third = new JukeboxAccount("Third", new char[] {'1'});
+		assertEquals(PlayResult.SONG_OUT_OF_PLAYS, controller.requestSongs(third, Arrays.asList(first, second, second)));
+		assertEquals(3, queue.getSongCount());
+		assertEquals(1, first.getTimesPlayed());
+		assertEquals(2, second.getTimesPlayed());
+		assertEquals(0, third.getTimesPlayed());
+		assertEquals(90000, third.getTime());
+		
+		assertEquals(PlayResult.NO_SONG, controller.requestSongs(user, Arrays.asList(first, null)));
+	}
+	
+	/**
+	 * Plays songs one after another, each for a set time, and tells the
+	 * listener on the event dispatch thread when each ends, as the
+	 * PlaybackEngine does.
+	 */
+	private static class HoldingPlayer implements SongController.Player
+	{
+		private final ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor();
+		private final long songMillis;
+		
+		// when the last song given ends, as a System.nanoTime()
+		private long lastEnd = System.nanoTime();
+		
+		private HoldingPlayer(long songMillis)
+		{
+			this.songMillis = songMillis;
+		}
+		
+		@Override
+		public synchronized void play(Song song, EndOfSongListener listener)
+		{
+			long now = System.nanoTime();
+			lastEnd = Math.max(now, lastEnd) + songMillis * 1000000;
+			EndOfSongEvent event = new EndOfSongEvent(song.getFileName(), LocalDate.now(), LocalTime.now());
+			clock.schedule(() -> EventQueue.invokeLater(() -> listener.songFinishedPlaying(event)), lastEnd - now,
+					TimeUnit.NANOSECONDS);
+		}
+		
+		private void shutdown()
+		{
+			clock.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.EventQueue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JTable;
+import javax.swing.RowSorter.SortKey;
+import javax.swing.SortOrder;
+import javax.swing.event.RowSorterEvent;
+import javax.swing.event.RowSorterListener;
+
+import org.junit.Test;
+
+import model.Song;
+import model.SongLibrary;
+import view.SongLibraryRowSorter;
+import view.SongLibraryTableModel;
+
+/**
+ * A unit test for sorting the song library's table off the event dispatch thread.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class SongLibraryRowSorterTest
+{
+	@Test
+	public void testDescendingKeepsTiesInOrder() throws Exception
+	{
+		SongLibraryTableModel model = new SongLibraryTableModel(SongLibrary.getInstance());
+		SongLibraryRowSorter sorter = new SongLibraryRowSorter(model);
+		
+		// the first descending order is found by a worker, the second from the
+		// ascending order kept
+		for (int column = 0; column < 3; column++)
+		{
+			sortBy(sorter, column, SortOrder.ASCENDING);
+			assertSorted(sorter, model, column, SortOrder.ASCENDING);
+			sortBy(sorter, column, SortOrder.DESCENDING);
+			assertSorted(sorter, model, column, SortOrder.DESCENDING);
+		}
+	}
+	
+	@Test
+	public void testRowsChangedWhileSorted() throws Exception
+	{
+		SongLibrary lib = SongLibrary.getInstance();
+		SongLibraryTableModel model = new SongLibraryTableModel(lib);
+		SongLibraryRowSorter sorter = new SongLibraryRowSorter(model);
+		JTable table = new JTable(model);
+		table.setRowSorter(sorter);
+		sortBy(sorter, SongLibrary.ARTIST_COLUMN, SortOrder.DESCENDING);
+		int rows = sorter.getViewRowCount();
+		
+		// an added song is shown at the end at once, then in its place
+		Song added = new Song("Sorted Later", "sorted.wav", 5, "Kevin MacLeod");
+		awaitSorted(sorter, () ->
+		{
+			lib.addSongs(Collections.singletonList(added));
+			assertEquals(rows + 1, sorter.getViewRowCount());
+			assertEquals(model.getRowCount() - 1, sorter.convertRowIndexToModel(rows));
+		});
+		assertSorted(sorter, model, SongLibrary.ARTIST_COLUMN, SortOrder.DESCENDING);
+		
+		// a removed song is gone at once
+		awaitSorted(sorter, () ->
+		{
+			lib.removeSongs(Collections.singletonList(added));
+			assertEquals(rows, sorter.getViewRowCount());
+			for (int i = 0; i < rows; i++)
+			{
+				assertTrue(sorter.convertRowIndexToModel(i) < model.getRowCount());
+			}
+		});
+		assertSorted(sorter, model, SongLibrary.ARTIST_COLUMN, SortOrder.DESCENDING);
+	}
+	
+	// Sorts by the column and waits for the order to be shown
+	private static void sortBy(SongLibraryRowSorter sorter, int column, SortOrder order) throws Exception
+	{
+		awaitSorted(sorter, () -> sorter.setSortKeys(Collections.singletonList(new SortKey(column, order))));
+	}
+	
+	// Runs the change on the event dispatch thread and waits for a new order to be shown
+	private static void awaitSorted(SongLibraryRowSorter sorter, Runnable change) throws Exception
+	{
+		CountDownLatch sorted = new CountDownLatch(1);
+		RowSorterListener listener = e ->
+		{
+			if (e.getType() == RowSorterEvent.Type.SORTED)
+			{
+				sorted.countDown();
+			}
+		};
+		EventQueue.invokeAndWait(() -> sorter.addRowSorterListener(listener));
+		EventQueue.invokeAndWait(change);
+		if (!sorted.await(10, TimeUnit.SECONDS))
+		{
+			fail("The rows were not sorted");
+		}
+		EventQueue.invokeAndWait(() -> sorter.removeRowSorterListener(listener));
+	}
+	
+	// Checks that every row is shown once, in order of the column, rows with the
+	// same value in model order
+	private static void assertSorted(SongLibraryRowSorter sorter, SongLibraryTableModel model, int column,
+			SortOrder order) throws Exception
+	{
+		EventQueue.invokeAndWait(() ->
+		{
+			int rows = model.getRowCount();
+			assertEquals(rows, sorter.getViewRowCount());
+			int[] shown = new int[rows];
+			for (int i = 0; i < rows; i++)
+			{
+				shown[i] = sorter.convertRowIndexToModel(i);
+				assertEquals(i, sorter.convertRowIndexToView(shown[i]));
+			}
+			for (int i = 1; i < rows; i++)
+			{
+				int compared = compare(model.getValueAt(shown[i - 1], column), model.getValueAt(shown[i], column));
+				if (order == SortOrder.DESCENDING)
+				{
+					compared = -compared;
+				}
+				if (compared > 0 || (compared == 0 && shown[i - 1] > shown[i]))
+				{
+					fail("Rows out of order: " + Arrays.toString(shown));
+				}
+			}
+		});
+	}
+	
+	// Compares two values of a column as the sorter does
+	private static int compare(Object a, Object b)
+	{
+		if (a instanceof Integer)
+		{
+			return Integer.compare((Integer) a, (Integer) b);
+		}
+		return String.CASE_INSENSITIVE_ORDER.compare((String) a, (String) b);
+	}
+}
@@ -2,11 +2,31 @@ package tests;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
 import org.junit.Test;
 
 import model.DateUpdater;
 import model.Song;
 import model.SongLibrary;
+import model.SongLibraryListener;
+import model.SongLibraryWatcher;
+import model.SongScanner;
+import model.SongSearchIndex;
 
 /**
  * A unit test for all the parts of the model relating to Songs.
@@ -33,6 +53,29 @@ public class SongTest
 		assertNull(song);
 	}
 	
+	@Test
+	public void testGetSongsByArtist()
+	{
+		SongLibrary lib  =	SongLibrary.getInstance();
+		List<Song> songs = lib.getSongsByArtist("Kevin MacLeod");
+		assertEquals(3, songs.size());
+		for (Song song : songs)
+		{
+			assertEquals("Kevin MacLeod", song.getArtist());
+		}
+		assertTrue(lib.getSongsByArtist("kajdflkjdslaksjdf").isEmpty());
+	}
+	
+	@Test
+	public void testGetSongsByFile()
+	{
+		SongLibrary lib  =	SongLibrary.getInstance();
+		Song song = lib.getSong("Tada");
+		List<Song> songs = lib.getSongsByFile(song.getFileName());
+		assertEquals(1, songs.size());
+		assertSame(song, songs.get(0));
+	}
+	
 	@Test
 	public void testPlayCount()
 	{
@@ -76,7 +119,7 @@ public class SongTest
 		DateUpdater.getInstance().simulateMidnight();
 		DateUpdater.getInstance().updateEvent();
 		assertEquals(0, song.getTimesPlayed());
-
+		
 		song.playSong();
 		song.playSong();
 		assertEquals(2, song.getTimesPlayed());
@@ -84,4 +127,214 @@ public class SongTest
 		DateUpdater.getInstance().updateEvent();
 		assertEquals(0, song.getTimesPlayed());
 	}
+	
+	@Test
+	public void testPlaysResetTogether() throws Exception
+	{
+		// enough songs that their plays fill more than one page of counters
+		List<Song> songs = new ArrayList<Song>();
+		for (int i = 0; i < 10000; i++)
+		{
+			Song song = new Song("Counted " + i, "counted" + i + ".wav", 1, "Counter");
+			songs.add(song);
+			song.playSong();
+		}
+		songs.get(9999).playSong();
+		assertEquals(1, songs.get(0).getTimesPlayed());
+		assertEquals(2, songs.get(9999).getTimesPlayed());
+		
+		// a song read back from an old style save keeps its plays
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+		{
+			out.writeObject(songs.get(9999));
+		}
+		Song copy;
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+		{
+			copy = (Song) in.readObject();
+		}
+		assertEquals("Counted 9999", copy.getName());
+		assertEquals(2, copy.getTimesPlayed());
+		copy.playSong();
+		assertEquals(3, copy.getTimesPlayed());
+		assertEquals(2, songs.get(9999).getTimesPlayed());
+		
+		DateUpdater.getInstance().simulateMidnight();
+		DateUpdater.getInstance().updateEvent();
+		for (Song song : songs)
+		{
+			assertEquals(0, song.getTimesPlayed());
+		}
+		assertEquals(0, copy.getTimesPlayed());
+	}
+	
+	@Test
+	public void testSearch()
+	{
+		SongLibrary lib  =	SongLibrary.getInstance();
+		
+		// a whole word, the start of a word, and a typo all find the song
+		assertEquals(lib.getSong("Swing Cheese"), lib.search("cheese", 10).get(0));
+		assertEquals(lib.getSong("Swing Cheese"), lib.search("Swing Che", 10).get(0));
+		assertEquals(lib.getSong("Swing Cheese"), lib.search("cheeze", 10).get(0));
+		
+		// every word must match
+		assertTrue(lib.search("swing fire", 10).isEmpty());
+		assertTrue(lib.search("kajdflkjdslaksjdf", 10).isEmpty());
+		
+		// songs named by the words rank above songs by an artist named by them
+		List<Song> songs = lib.search("music", 10);
+		assertEquals(3, songs.size());
+		assertEquals(lib.getSong("Space Music"), songs.get(0));
+		
+		assertEquals(3, lib.search("kevin", 10).size());
+		assertEquals(2, lib.search("kevin", 2).size());
+		
+		// songs ranking the same keep the order they were added, even when the
+		// later one's word is found first
+		SongSearchIndex index = new SongSearchIndex();
+		Song car = new Song("Car", "car.wav", 1, "Tester");
+		index.add(car);
+		index.add(new Song("Cab", "cab.wav", 1, "Tester"));
+		assertEquals(Arrays.asList(car), index.search("ca", 1));
+	}
+	
+	@Test
+	public void testScanSongs() throws Exception
+	{
+		Path dir = Files.createTempDirectory("songfiles");
+		writeWave(dir.resolve("Some Band - First.wav"), 3);
+		Files.createDirectory(dir.resolve("more"));
+		writeWave(dir.resolve("more").resolve("Second.wav"), 1);
+		Files.write(dir.resolve("notes.txt"), new byte[10]);
+		// a link back up the tree is not followed
+		Files.createSymbolicLink(dir.resolve("more").resolve("loop"), dir);
+		
+		SongScanner scanner = new SongScanner(dir, 2);
+		List<Song> songs = scanner.scan();
+		assertEquals(2, songs.size());
+		assertEquals("First", songs.get(0).getName());
+		assertEquals("Some Band", songs.get(0).getArtist());
+		assertEquals(3, songs.get(0).getLength());
+		assertEquals("Second", songs.get(1).getName());
+		assertEquals("Unknown", songs.get(1).getArtist());
+		assertEquals(2, scanner.getProbedCount());
+		
+		// only the changed file is probed again
+		writeWave(dir.resolve("more").resolve("Second.wav"), 2);
+		List<Song> again = scanner.scan();
+		assertEquals(1, scanner.getProbedCount());
+		assertEquals(1, scanner.getReusedCount());
+		assertSame(songs.get(0), again.get(0));
+		assertEquals(2, again.get(1).getLength());
+		scanner.shutdown();
+	}
+	
+	@Test
+	public void testAddAndRemoveSongs()
+	{
+		SongLibrary lib  =	SongLibrary.getInstance();
+		ArrayList<String> changes = new ArrayList<String>();
+		SongLibraryListener listener = new SongLibraryListener()
+		{
+			@Override
+			public void songsAdded(SongLibrary library, int firstRow, int lastRow)
+			{
+				changes.add("added " + firstRow + "-" + lastRow);
+			}
+			
+			@Override
+			public void songsRemoved(SongLibrary library, int firstRow, int lastRow)
+			{
+				changes.add("removed " + firstRow + "-" + lastRow);
+			}
+			
+			@Override
+			public void songsReplaced(SongLibrary library)
+			{
+				changes.add("replaced");
+			}
+		};
+		lib.addSongLibraryListener(listener);
+		int rows = lib.getRowCount();
+		Song first = new Song("Added First", "added1.wav", 1, "Tester");
+		Song second = new Song("Added Second", "added2.wav", 1, "Tester");
+		Song third = new Song("Added Third", "added3.wav", 1, "Tester");
+		lib.addSongs(Arrays.asList(first, second, third));
+		
+		// a file already in the library is not added again
+		lib.addSongs(Arrays.asList(new Song("Added Again", "added1.wav", 1, "Tester")));
+		assertEquals(rows + 3, lib.getRowCount());
+		assertSame(second, lib.getSong("Added Second"));
+		assertSame(third, lib.search("added third", 1).get(0));
+		
+		lib.removeSongs(Arrays.asList(first, third));
+		assertEquals(rows + 1, lib.getRowCount());
+		assertNull(lib.getSong("Added First"));
+		assertTrue(lib.search("added third", 1).isEmpty());
+		assertNotNull(lib.removeSong("Added Second"));
+		assertEquals(rows, lib.getRowCount());
+		
+		lib.removeSongLibraryListener(listener);
+		String added = "added " + rows + "-" + (rows + 2);
+		String removedThird = "removed " + (rows + 2) + "-" + (rows + 2);
+		String removedFirst = "removed " + rows + "-" + rows;
+		assertEquals(Arrays.asList(added, removedThird, removedFirst, removedFirst), changes);
+	}
+	
+	@Test
+	public void testWatchSongFiles() throws Exception
+	{
+		Path dir = Files.createTempDirectory("songfiles");
+		SongLibrary lib  =	SongLibrary.getInstance();
+		// a song already in the library, as if loaded from a save, is kept
+		writeWave(dir.resolve("Watcher - Loaded.wav"), 1);
+		SongScanner loader = new SongScanner(dir, 2);
+		lib.addSongs(loader.scan());
+		loader.shutdown();
+		Song loaded = lib.getSong("Loaded");
+		SongLibraryWatcher watcher = new SongLibraryWatcher(lib, new SongScanner(dir, 2), Runnable::run);
+		watcher.start();
+		
+		writeWave(dir.resolve("Watcher - Arrived.wav"), 1);
+		for (int i = 0; i < 100 && lib.getSong("Arrived") == null; i++)
+		{
+			Thread.sleep(100);
+		}
+		assertEquals("Watcher", lib.getSong("Arrived").getArtist());
+		
+		Files.delete(dir.resolve("Watcher - Arrived.wav"));
+		for (int i = 0; i < 100 && lib.getSong("Arrived") != null; i++)
+		{
+			Thread.sleep(100);
+		}
+		assertNull(lib.getSong("Arrived"));
+		assertSame(loaded, lib.getSong("Loaded"));
+		
+		// and is replaced when its file changes, and removed when it is gone
+		writeWave(dir.resolve("Watcher - Loaded.wav"), 2);
+		for (int i = 0; i < 100 && lib.getSong("Loaded").getLength() != 2; i++)
+		{
+			Thread.sleep(100);
+		}
+		assertEquals(1, lib.getSongsByFile(loaded.getFileName()).size());
+		assertEquals(2, lib.getSong("Loaded").getLength());
+		Files.delete(dir.resolve("Watcher - Loaded.wav"));
+		for (int i = 0; i < 100 && lib.getSong("Loaded") != null; i++)
+		{
+			Thread.sleep(100);
+		}
+		assertNull(lib.getSong("Loaded"));
+		watcher.stop();
+	}
+	
+	// Writes a silent wave file of the given length in seconds
+	private static void writeWave(Path file, int seconds) throws IOException
+	{
+		AudioFormat format = new AudioFormat(8000, 8, 1, true, false);
+		byte[] silence = new byte[8000 * seconds];
+		AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(silence), format, silence.length);
+		AudioSystem.write(in, AudioFileFormat.Type.WAVE, file.toFile());
+	}
 }
@@ -9,10 +9,10 @@ import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.JTextField;
 import javax.swing.ListModel;
-import javax.swing.RowSorter;
-import javax.swing.table.TableModel;
-import javax.swing.table.TableRowSorter;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import controller.ControlCoord;
 import controller.ListenerFactory;
@@ -24,13 +24,20 @@ import model.SongLibrary;
 
 /**
  * Defines a JPanel that contains a JTable and JList for the SongLibrary
- * and playlist, respectively, as well as a button to play songs.
+ * and playlist, respectively, as well as a button to play songs. Typing in
+ * the field above the table shows only the songs SongLibrary.search() finds.
+ * The table is sorted and searched off the event dispatch thread by a
+ * SongLibraryRowSorter, and only ever draws the rows in view, so it stays quick
+ * however large the library is.
  * 
  * @author Sean Gallagher
  */
 @SuppressWarnings("serial")
 public class JukeboxSongPanel extends JPanel
 {
+	// most library rows the table is sized to show at once
+	private static final int VISIBLE_ROWS = 12;
+	
 	private JTable songLibTable;
 	private JList<Song> playlist;
 	
@@ -44,7 +51,7 @@ public class JukeboxSongPanel extends JPanel
 		Jukebox model = ControlCoord.getInstance().getModel();
 		ReadableSongQueue songs = model.getSongQueue();
 		setLayout(new BorderLayout());
-		setupPlayList(songs);
+		setupPlayList(new SongQueueListModel(songs));
 		setupSongTable(factory);
 	}
 	
@@ -57,16 +64,40 @@ public class JukeboxSongPanel extends JPanel
 	{
 		SongLibrary lib = SongLibrary.getInstance();
 		JPanel tablePanel = new JPanel();
+		tablePanel.setLayout(new BorderLayout());
 		
-		songLibTable = new JTable(lib);
-		RowSorter<TableModel> rs = new TableRowSorter<TableModel>(lib);
+		SongLibraryTableModel tableModel = new SongLibraryTableModel(lib);
+		songLibTable = new JTable(tableModel);
+		SongLibraryRowSorter rs = new SongLibraryRowSorter(tableModel);
 		songLibTable.setRowSorter(rs);
-
+		
+		JTextField searchField = new JTextField();
+		searchField.getDocument().addDocumentListener(new DocumentListener()
+		{
+			@Override
+			public void insertUpdate(DocumentEvent e)
+			{
+				rs.setQuery(searchField.getText());
+			}
+			
+			@Override
+			public void removeUpdate(DocumentEvent e)
+			{
+				rs.setQuery(searchField.getText());
+			}
+			
+			@Override
+			public void changedUpdate(DocumentEvent e)
+			{
+			}
+		});
+		tablePanel.add(searchField, BorderLayout.NORTH);
+		
 		JScrollPane pane = new JScrollPane(songLibTable);
 		int width = songLibTable.getPreferredSize().width + 200;
-		int height = songLibTable.getRowHeight() * lib.getRowCount() + 1;
+		int height = songLibTable.getRowHeight() * Math.min(lib.getRowCount(), VISIBLE_ROWS) + 1;
 		pane.setPreferredSize(new Dimension(width, height));
-		tablePanel.add(pane);
+		tablePanel.add(pane, BorderLayout.CENTER);
 		
 		add(tablePanel, BorderLayout.EAST);
 		
@@ -77,17 +108,16 @@ public class JukeboxSongPanel extends JPanel
 		SongGetter songGetter = () ->
 		{
 			int row = songLibTable.getSelectedRow();
-			int col = songLibTable.convertColumnIndexToView(1);
-			String name = null;
-			if (row != -1)
+			if (row == -1)
 			{
-				name = (String) songLibTable.getValueAt(row, col);
+				return null;
 			}
-			return SongLibrary.getInstance().getSong(name);
+			// look the song up by its row so that no index has to be built
+			return SongLibrary.getInstance().getSongAt(songLibTable.convertRowIndexToModel(row));
 		};
 		button.addActionListener(factory.makeSongListener(songGetter));
 	}
-
+	
 	/**
 	 * Creates the JList that displays the current playlist
 	 */
@@ -100,6 +130,8 @@ public class JukeboxSongPanel extends JPanel
 		playlistPanel.add(label, BorderLayout.NORTH);
 		
 		playlist = new JList<Song>(songs);
+		// every row is sized like this one, so adding a song does not measure them all
+		playlist.setPrototypeCellValue(new Song("A song with a fairly long name", "", 600, "Some Artist"));
 		JScrollPane pane = new JScrollPane(playlist);	
 		pane.setPreferredSize(new Dimension(300, 150));
 		playlistPanel.add(pane, BorderLayout.CENTER);
@@ -0,0 +1,483 @@
+package src.view;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.SwingWorker;
+
+import model.SongLibrary;
+
+/**
+ * Sorts the rows of a SongLibraryTableModel by one column, and limits them to
+ * the songs found by a search of the library, without holding the event
+ * dispatch thread for long however many songs there are.
+ * 
+ * A TableRowSorter sorts every row on the event dispatch thread each time the
+ * sort order or the library changes. This sorter works the order out on a
+ * thread of its own instead, and the table keeps the order it had until the
+ * new one is ready. The ascending order of each column is kept until the
+ * library next changes, so sorting by a column again, either way, takes only
+ * a copy. Rows with the same value stay in model order either way, as they
+ * do with a TableRowSorter.
+ * 
+ * Rows added while the table is sorted or searched are shown at the end until
+ * the new order is ready. Removed rows disappear at once. The worker copies
+ * what it needs from the library in one step, so the library may change while
+ * it sorts; an order found for rows that have since changed is not shown.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class SongLibraryRowSorter extends RowSorter<SongLibraryTableModel>
+{
+	// the model sorted
+	private final SongLibraryTableModel model;
+	
+	// the column sorted by, if any
+	private List<SortKey> sortKeys = Collections.emptyList();
+	
+	// the search the rows must match, or null to show every row
+	private String query;
+	
+	// the model row shown in each view row and the reverse, both null while
+	// every row is shown in model order
+	private int[] viewToModel;
+	private int[] modelToView;
+	
+	// counts changes to the model, so that orders worked out before one are
+	// not used after it
+	private long version;
+	
+	// the ascending order of each column's rows, and the version it is for
+	private final ColumnOrder[] ascending = new ColumnOrder[3];
+	private final long[] ascendingVersion = { -1, -1, -1 };
+	
+	// counts the times the rows were asked to be put in order, so that an order
+	// asked for before another is not shown after it
+	private long requests;
+	
+	// true while a worker is finding an order
+	private boolean sorting;
+	
+	/**
+	 * Creates a sorter for the given model, showing every row in model order.
+	 */
+	public SongLibraryRowSorter(SongLibraryTableModel model)
+	{
+		this.model = model;
+	}
+	
+	/**
+	 * Shows only the songs found by searching the library for the given text, or
+	 * every song if it is empty.
+	 */
+	public void setQuery(String text)
+	{
+		query = text.isBlank() ? null : text;
+		sort();
+	}
+	
+	@Override
+	public SongLibraryTableModel getModel()
+	{
+		return model;
+	}
+	
+	// Sorts by the column, ascending unless it is sorted ascending already
+	@Override
+	public void toggleSortOrder(int column)
+	{
+		SortOrder order = SortOrder.ASCENDING;
+		if (!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column
+				&& sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING)
+		{
+			order = SortOrder.DESCENDING;
+		}
+		setSortKeys(Collections.singletonList(new SortKey(column, order)));
+	}
+	
+	// Only the first key is used, the others are ignored
+	@Override
+	public void setSortKeys(List<? extends SortKey> keys)
+	{
+		if (keys == null || keys.isEmpty() || keys.get(0).getSortOrder() == SortOrder.UNSORTED)
+		{
+			sortKeys = Collections.emptyList();
+		}
+		else
+		{
+			sortKeys = Collections.singletonList(keys.get(0));
+		}
+		fireSortOrderChanged();
+		sort();
+	}
+	
+	@Override
+	public List<? extends SortKey> getSortKeys()
+	{
+		return sortKeys;
+	}
+	
+	@Override
+	public int convertRowIndexToModel(int index)
+	{
+		if (viewToModel == null)
+		{
+			checkRow(index, model.getRowCount());
+			return index;
+		}
+		return viewToModel[index];
+	}
+	
+	@Override
+	public int convertRowIndexToView(int index)
+	{
+		if (modelToView == null)
+		{
+			checkRow(index, model.getRowCount());
+			return index;
+		}
+		return modelToView[index];
+	}
+	
+	// Throws if the row is not one of count rows
+	private static void checkRow(int row, int count)
+	{
+		if (row < 0 || row >= count)
+		{
+			throw new IndexOutOfBoundsException("Invalid row " + row);
+		}
+	}
+	
+	@Override
+	public int getViewRowCount()
+	{
+		return (viewToModel == null) ? model.getRowCount() : viewToModel.length;
+	}
+	
+	@Override
+	public int getModelRowCount()
+	{
+		return model.getRowCount();
+	}
+	
+	// Shows every row in model order until the rows are sorted again
+	@Override
+	public void modelStructureChanged()
+	{
+		allRowsChanged();
+	}
+	
+	// Shows every row in model order until the rows are sorted again
+	@Override
+	public void allRowsChanged()
+	{
+		version++;
+		viewToModel = null;
+		modelToView = null;
+		sort();
+	}
+	
+	// Shows the rows at the end until the rows are sorted again
+	@Override
+	public void rowsInserted(int firstRow, int endRow)
+	{
+		version++;
+		if (viewToModel != null)
+		{
+			int count = endRow - firstRow + 1;
+			int shown = viewToModel.length;
+			int[] rows = Arrays.copyOf(viewToModel, shown + count);
+			for (int i = 0; i < shown; i++)
+			{
+				if (rows[i] >= firstRow)
+				{
+					rows[i] += count;
+				}
+			}
+			for (int row = firstRow; row <= endRow; row++)
+			{
+				rows[shown++] = row;
+			}
+			setViewToModel(rows);
+		}
+		sort();
+	}
+	
+	// Drops the rows from the view at once
+	@Override
+	public void rowsDeleted(int firstRow, int endRow)
+	{
+		version++;
+		if (viewToModel != null)
+		{
+			int count = endRow - firstRow + 1;
+			int[] rows = new int[viewToModel.length];
+			int shown = 0;
+			for (int row : viewToModel)
+			{
+				if (row < firstRow)
+				{
+					rows[shown++] = row;
+				}
+				else if (row > endRow)
+				{
+					rows[shown++] = row - count;
+				}
+			}
+			setViewToModel(Arrays.copyOf(rows, shown));
+		}
+		sort();
+	}
+	
+	@Override
+	public void rowsUpdated(int firstRow, int endRow)
+	{
+		version++;
+		sort();
+	}
+	
+	@Override
+	public void rowsUpdated(int firstRow, int endRow, int column)
+	{
+		rowsUpdated(firstRow, endRow);
+	}
+	
+	/**
+	 * Puts the rows in the order asked for: at once if every row is shown and the
+	 * order of the sort column is known, and otherwise once a worker has found
+	 * the order.
+	 */
+	private void sort()
+	{
+		requests++;
+		SortKey key = sortKeys.isEmpty() ? null : sortKeys.get(0);
+		if (key == null && query == null)
+		{
+			if (viewToModel != null)
+			{
+				show(null);
+			}
+			return;
+		}
+		if (query == null && ascendingVersion[key.getColumn()] == version)
+		{
+			show(arrange(ascending[key.getColumn()], key.getSortOrder(), null));
+			return;
+		}
+		if (sorting)
+		{
+			// the worker sorts again once it is done
+			return;
+		}
+		sorting = true;
+		
+		long request = requests;
+		long started = version;
+		String search = query;
+		ColumnOrder known = (key != null && ascendingVersion[key.getColumn()] == version) ? ascending[key.getColumn()] : null;
+		new SwingWorker<int[], Void>()
+		{
+			// the ascending order found for the sort column
+			private ColumnOrder order;
+			
+			@Override
+			protected int[] doInBackground()
+			{
+				order = known;
+				if (key != null && order == null)
+				{
+					order = ascendingOrder(key.getColumn());
+				}
+				boolean[] found = (search == null) ? null : model.getLibrary().searchRows(search);
+				if (order != null && found != null && order.rows.length != found.length)
+				{
+					// the library changed between the two, and is sorted again
+					return null;
+				}
+				return arrange(order, (key == null) ? SortOrder.ASCENDING : key.getSortOrder(), found);
+			}
+			
+			@Override
+			protected void done()
+			{
+				sorting = false;
+				if (version == started)
+				{
+					try
+					{
+						int[] rows = get();
+						if (key != null && order != null)
+						{
+							ascending[key.getColumn()] = order;
+							ascendingVersion[key.getColumn()] = started;
+						}
+						if (request == requests && rows != null)
+						{
+							show(rows);
+						}
+					}
+					catch (InterruptedException | ExecutionException e)
+					{
+						System.err.println("Sorting the song library failed");
+						e.printStackTrace();
+					}
+				}
+				// the order was asked for again, or the library changed while it
+				// was read
+				if (version != started || request != requests)
+				{
+					sort();
+				}
+			}
+		}.execute();
+	}
+	
+	/**
+	 * Returns the rows of the model in ascending order of the column. Runs off
+	 * the event dispatch thread.
+	 */
+	private ColumnOrder ascendingOrder(int column)
+	{
+		Object[] cells = model.getLibrary().getColumn(column);
+		int rows = cells.length;
+		int[] order = new int[rows];
+		boolean[] tied = new boolean[rows];
+		if (column == SongLibrary.LENGTH_COLUMN)
+		{
+			// each length is sorted with its row, rows of the same length staying in order
+			long[] keys = new long[rows];
+			for (int row = 0; row < rows; row++)
+			{
+				keys[row] = (long) (Integer) cells[row] << 32 | row;
+			}
+			Arrays.sort(keys);
+			for (int i = 0; i < rows; i++)
+			{
+				order[i] = (int) keys[i];
+				tied[i] = i > 0 && keys[i] >>> 32 == keys[i - 1] >>> 32;
+			}
+			return new ColumnOrder(order, tied);
+		}
+		String[] values = new String[rows];
+		Integer[] boxed = new Integer[rows];
+		for (int row = 0; row < rows; row++)
+		{
+			values[row] = (String) cells[row];
+			boxed[row] = row;
+		}
+		// a stable sort, so rows with the same value stay in order
+		Arrays.sort(boxed, (a, b) -> String.CASE_INSENSITIVE_ORDER.compare(values[a], values[b]));
+		for (int i = 0; i < rows; i++)
+		{
+			order[i] = boxed[i];
+			tied[i] = i > 0 && String.CASE_INSENSITIVE_ORDER.compare(values[order[i]], values[order[i - 1]]) == 0;
+		}
+		return new ColumnOrder(order, tied);
+	}
+	
+	/**
+	 * Returns the rows to show, in the given ascending order or in model order if
+	 * it is null, reversed if the sort order is descending, and only the rows
+	 * found if found is not null. Reversing keeps rows with the same value in
+	 * model order.
+	 */
+	private int[] arrange(ColumnOrder order, SortOrder sortOrder, boolean[] found)
+	{
+		int rows = (order == null) ? found.length : order.rows.length;
+		int[] shown;
+		if (order == null)
+		{
+			shown = new int[rows];
+			Arrays.setAll(shown, i -> i);
+		}
+		else if (sortOrder == SortOrder.DESCENDING)
+		{
+			// each run of tied rows is moved as a whole, last run first
+			shown = new int[rows];
+			int next = 0;
+			int end = rows;
+			while (end > 0)
+			{
+				int start = end - 1;
+				while (order.tied[start])
+				{
+					start--;
+				}
+				System.arraycopy(order.rows, start, shown, next, end - start);
+				next += end - start;
+				end = start;
+			}
+		}
+		else
+		{
+			shown = order.rows.clone();
+		}
+		if (found == null)
+		{
+			return shown;
+		}
+		int count = 0;
+		for (int row : shown)
+		{
+			if (found[row])
+			{
+				shown[count++] = row;
+			}
+		}
+		return Arrays.copyOf(shown, count);
+	}
+	
+	/**
+	 * Shows the given rows, or every row in model order if it is null, and tells
+	 * the table the order changed.
+	 */
+	private void show(int[] rows)
+	{
+		int[] last = viewToModel;
+		if (last == null)
+		{
+			// the table needs the old order to keep the selected rows selected
+			last = new int[model.getRowCount()];
+			Arrays.setAll(last, i -> i);
+		}
+		setViewToModel(rows);
+		fireRowSorterChanged(last);
+	}
+	
+	// Sets the model row shown in each view row, and works out the reverse
+	private void setViewToModel(int[] rows)
+	{
+		viewToModel = rows;
+		if (rows == null)
+		{
+			modelToView = null;
+			return;
+		}
+		modelToView = new int[model.getRowCount()];
+		Arrays.fill(modelToView, -1);
+		for (int i = 0; i < rows.length; i++)
+		{
+			modelToView[rows[i]] = i;
+		}
+	}
+	
+	/**
+	 * The rows of the model in ascending order of a column, and which of them
+	 * have the same value as the row before.
+	 */
+	private static class ColumnOrder
+	{
+		private final int[] rows;
+		private final boolean[] tied;
+		
+		private ColumnOrder(int[] rows, boolean[] tied)
+		{
+			this.rows = rows;
+			this.tied = tied;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package src.view;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableModel;
+
+import model.SongLibrary;
+import model.SongLibraryListener;
+
+/**
+ * Adapts the SongLibrary for use with a JTable, showing the artist, name and
+ * length of each song.
+ * 
+ * The table reads the library directly, so the library should only be changed
+ * on the event dispatch thread while it is shown. Listeners are then told
+ * exactly which rows were added or removed. A change made on another thread is
+ * told to listeners later, on the event dispatch thread, as a change to every
+ * row.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class SongLibraryTableModel implements TableModel, SongLibraryListener
+{
+	// the library shown
+	private final SongLibrary library;
+	
+	// stores listeners
+	private final ArrayList<TableModelListener> listeners = new ArrayList<TableModelListener>();
+	
+	/**
+	 * Creates a table model showing the given library.
+	 */
+	public SongLibraryTableModel(SongLibrary library)
+	{
+		this.library = library;
+		library.addSongLibraryListener(this);
+	}
+	
+	// Tells listeners the rows were inserted
+	@Override
+	public void songsAdded(SongLibrary library, int firstRow, int lastRow)
+	{
+		fire(new TableModelEvent(this, firstRow, lastRow, TableModelEvent.ALL_COLUMNS, TableModelEvent.INSERT));
+	}
+	
+	// Tells listeners the rows were deleted
+	@Override
+	public void songsRemoved(SongLibrary library, int firstRow, int lastRow)
+	{
+		fire(new TableModelEvent(this, firstRow, lastRow, TableModelEvent.ALL_COLUMNS, TableModelEvent.DELETE));
+	}
+	
+	// Tells listeners every row changed
+	@Override
+	public void songsReplaced(SongLibrary library)
+	{
+		fire(new TableModelEvent(this));
+	}
+	
+	/**
+	 * Gives the event to each listener, or tells them every row changed if this
+	 * is not the event dispatch thread.
+	 */
+	private void fire(TableModelEvent e)
+	{
+		if (!EventQueue.isDispatchThread())
+		{
+			EventQueue.invokeLater(() -> fire(new TableModelEvent(this)));
+			return;
+		}
+		for (TableModelListener listener : listeners)
+		{
+			listener.tableChanged(e);
+		}
+	}
+	
+	/**
+	 * Returns the library shown
+	 */
+	public SongLibrary getLibrary()
+	{
+		return library;
+	}
+	
+	// Returns the type for each column
+	@Override
+	public Class<?> getColumnClass(int index)
+	{
+		if (index == SongLibrary.LENGTH_COLUMN)
+		{
+			return Integer.class;
+		}
+		return String.class;
+	}
+	
+	// 3 columns: Artist, Title, Length
+	@Override
+	public int getColumnCount()
+	{
+		return 3;
+	}
+	
+	// Get the name for each column
+	@Override
+	public String getColumnName(int index)
+	{
+		if (index == SongLibrary.ARTIST_COLUMN)
+		{
+			return "Artist";
+		}
+		else if (index == SongLibrary.NAME_COLUMN)
+		{
+			return "Song";
+		}
+		return "Seconds";
+	}
+	
+	// Number of rows = number of songs
+	@Override
+	public int getRowCount()
+	{
+		return library.getRowCount();
+	}
+	
+	// Returns the appropriate field of the appropriate song
+	@Override
+	public Object getValueAt(int row, int col)
+	{
+		return library.getValueAt(row, col);
+	}
+	
+	// Can not edit the table
+	@Override
+	public boolean isCellEditable(int row, int col)
+	{
+		return false;
+	}
+	
+	// Adds the given listener to listeners
+	@Override
+	public void addTableModelListener(TableModelListener listener)
+	{
+		listeners.add(listener);
+	}
+	
+	// Removes the given listener from listeners
+	@Override
+	public void removeTableModelListener(TableModelListener listener)
+	{
+		listeners.remove(listener);
+	}
+	
+	// No need to implement this
+	
+	@Override
+	public void setValueAt(Object val, int row, int col) {}
+}
@@ -0,0 +1,185 @@
+package src.view;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+
+import javax.swing.ListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import model.ReadableSongQueue;
+import model.Song;
+import model.SongQueueListener;
+
+/**
+ * Adapts a ReadableSongQueue for use with a JList.
+ * 
+ * Listeners are told exactly which rows were added or removed, on the event
+ * dispatch thread. Changes made before the listeners are next notified are
+ * combined, so a burst of changes costs the view one update.
+ * 
+ * getSize() and getElementAt() read an immutable copy of the queue taken each
+ * time the listeners are notified, so the view never locks the queue and
+ * always sees the rows its events describe.
+ * 
+ * @author Taylor Heimbichner
+ */
+public class SongQueueListModel implements ListModel<Song>, SongQueueListener
+{
+	// the queue shown, whose lock also guards the pending changes below
+	private final ReadableSongQueue queue;
+	
+	// stores listeners
+	private final ArrayList<ListDataListener> listeners = new ArrayList<ListDataListener>();
+	
+	// the queue as the listeners last saw it, never modified once set
+	private volatile Song[] view;
+	
+	// songs removed from the front and added to the back since the listeners
+	// were last notified, and whether they should instead reload everything
+	private int pendingRemoved;
+	private int pendingAdded;
+	private boolean pendingReload;
+	
+	// true while a notification is waiting on the event dispatch thread
+	private boolean notifyScheduled;
+	
+	/**
+	 * Creates a list model showing the given queue.
+	 */
+	public SongQueueListModel(ReadableSongQueue queue)
+	{
+		this.queue = queue;
+		synchronized (queue)
+		{
+			view = queue.getSongs();
+			queue.addSongQueueListener(this);
+		}
+	}
+	
+	// Records that songs were added to the back of the queue
+	@Override
+	public void songsAdded(ReadableSongQueue queue, int count)
+	{
+		pendingAdded += count;
+		scheduleNotify();
+	}
+	
+	// Records that the song at the front of the queue was removed. If the
+	// listeners never saw it, it was one of the songs added since they were
+	// last notified.
+	@Override
+	public void songRemoved(ReadableSongQueue queue)
+	{
+		if (pendingRemoved < view.length)
+		{
+			pendingRemoved++;
+		}
+		else
+		{
+			pendingAdded--;
+		}
+		scheduleNotify();
+	}
+	
+	// Records that the whole queue was replaced
+	@Override
+	public void songsReplaced(ReadableSongQueue queue)
+	{
+		pendingReload = true;
+		scheduleNotify();
+	}
+	
+	// Asks the event dispatch thread to notify listeners, unless it has been asked already
+	private void scheduleNotify()
+	{
+		if (!notifyScheduled)
+		{
+			notifyScheduled = true;
+			EventQueue.invokeLater(this::notifyListeners);
+		}
+	}
+	
+	/**
+	 * Tells each listener about every change made since they were last told, as
+	 * the removal of rows from the front followed by the addition of rows to the
+	 * back, and takes a new copy of the queue for them to read. Runs on the event
+	 * dispatch thread.
+	 */
+	private void notifyListeners()
+	{
+		ArrayList<ListDataEvent> events = new ArrayList<ListDataEvent>(2);
+		synchronized (queue)
+		{
+			notifyScheduled = false;
+			int viewSize = view.length;
+			view = queue.getSongs();
+			if (pendingReload)
+			{
+				events.add(new ListDataEvent(this, ListDataEvent.CONTENTS_CHANGED, 0, Math.max(0, view.length - 1)));
+			}
+			else
+			{
+				if (pendingRemoved > 0)
+				{
+					events.add(new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, 0, pendingRemoved - 1));
+				}
+				if (pendingAdded > 0)
+				{
+					int first = viewSize - pendingRemoved;
+					events.add(new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, first, first + pendingAdded - 1));
+				}
+			}
+			pendingReload = false;
+			pendingRemoved = 0;
+			pendingAdded = 0;
+		}
+		
+		for (ListDataEvent e : events)
+		{
+			for (ListDataListener listener : listeners)
+			{
+				if (e.getType() == ListDataEvent.INTERVAL_REMOVED)
+				{
+					listener.intervalRemoved(e);
+				}
+				else if (e.getType() == ListDataEvent.INTERVAL_ADDED)
+				{
+					listener.intervalAdded(e);
+				}
+				else
+				{
+					listener.contentsChanged(e);
+				}
+			}
+		}
+	}
+	
+	// Returns the size of the list as the listeners last saw it.
+	@Override
+	public int getSize()
+	{
+		return view.length;
+	}
+	
+	// Returns values in the appropriate order, as the listeners last saw them
+	@Override
+	public Song getElementAt(int i)
+	{
+		return view[i];
+	}
+	
+	// Adds the given listener to listeners
+	@Override
+	public void addListDataListener(ListDataListener listener)
+	{
+		listeners.add(listener);
+	}
+	
+	// Removes the given listener from listeners
+	@Override
+	public void removeListDataListener(ListDataListener listener)
+	{
+		listeners.remove(listener);
+	}
+}